@@ -4,15 +4,31 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class ATMGui extends JFrame {
-    private final AccountDAO dao = new AccountDAO();
+    private final ConnectionPool pool = new ConnectionPool(DBConfig.URL, DBConfig.USER, DBConfig.PASS);
+    private final ReplicaRouter replicas = ReplicaRouter.fromConfig(pool);
+    private final AccountDAO dao = new AccountDAO(pool, replicas, DBConfig.EXECUTION_MODE);
+    private final InstrumentedTransactionable transactions = new InstrumentedTransactionable(dao);
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private MetricsHttpServer metricsServer;
     private Account currentAccount;
+    private TransactionRecord historyCursor; // last row shown, null when there is nothing older
+    private boolean historyLoading; // a page is on its way; further clicks are ignored until it lands
     private final InMemoryCache cache = new InMemoryCache();
+    private final TransactionExecutor executor = new TransactionExecutor();
+    private final AuthService auth = new AuthService(dao, cache);
+    private final AsyncAccountClient client = new AsyncAccountClient(executor, transactions, dao, cache, auth);
+    private final StartupManager startup = new StartupManager(pool, dao, cache);
+    private final CompletableFuture<Void> ready;
+    private final String terminalId = System.getProperty("atm.terminal", "local");
 
     // UI components
     private final JTextField txtAccountId = new JTextField(10);
+    private final JButton btnLoad = new JButton("Load Account");
     private final JLabel lblName = new JLabel("-");
     private final JLabel lblBalance = new JLabel("-");
     private final JTextArea txtArea = new JTextArea(8, 30);
@@ -23,13 +39,59 @@ public class ATMGui extends JFrame {
         setSize(600, 420);
         setLocationRelativeTo(null);
         buildUI();
+        dao.addChangeListener(cache);
+        dao.addChangeListener(startup);
+        startMetrics();
+        // no logins until the driver, pool and cache are warm (or the startup wait runs out)
+        txtAccountId.setEnabled(false);
+        btnLoad.setEnabled(false);
+        txtArea.setText("Starting...");
+        ready = startup.start().thenRunAsync(() -> {
+            txtAccountId.setEnabled(true);
+            btnLoad.setEnabled(true);
+            txtArea.setText("");
+        }, SwingUtilities::invokeLater);
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent e) {
+                shutdown();
+            }
+        });
+    }
+
+    private void shutdown() {
+        // let in-flight transactions commit before the JVM exits
+        executor.close();
+        startup.saveSnapshot();
+        // drains the group-commit writer while the pool can still hand it connections
+        dao.close();
+        pool.close();
+        if (replicas != null) replicas.close();
+        if (metricsServer != null) metricsServer.close();
+    }
+
+    private void startMetrics() {
+        transactions.registerMetrics(metrics);
+        dao.registerMetrics(metrics);
+        pool.registerMetrics(metrics);
+        if (replicas != null) replicas.registerMetrics(metrics);
+        cache.registerMetrics(metrics);
+        auth.registerMetrics(metrics);
+        executor.registerMetrics(metrics);
+        startup.registerMetrics(metrics);
+        try {
+            metrics.registerMBean();
+            if (DBConfig.METRICS_HTTP_PORT > 0) metricsServer = new MetricsHttpServer(metrics, DBConfig.METRICS_HTTP_PORT);
+        } catch (Exception e) {
+            // the ATM works without metrics export
+            System.err.println("Metrics export unavailable: " + e.getMessage());
+        }
     }
 
     private void buildUI() {
         JPanel top = new JPanel();
         top.add(new JLabel("Account ID:"));
         top.add(txtAccountId);
-        JButton btnLoad = new JButton("Load Account");
         top.add(btnLoad);
 
         JPanel info = new JPanel(new GridLayout(2, 2));
@@ -43,11 +105,13 @@ public class ATMGui extends JFrame {
         JButton btnDeposit = new JButton("Deposit");
         JButton btnTransfer = new JButton("Transfer");
         JButton btnTransactions = new JButton("Transactions");
+        JButton btnOlder = new JButton("Older");
 
         actions.add(btnWithdraw);
         actions.add(btnDeposit);
         actions.add(btnTransfer);
         actions.add(btnTransactions);
+        actions.add(btnOlder);
 
         JPanel center = new JPanel(new BorderLayout());
         txtArea.setEditable(false);
@@ -63,67 +127,46 @@ public class ATMGui extends JFrame {
         btnDeposit.addActionListener(this::onDeposit);
         btnTransfer.addActionListener(this::onTransfer);
         btnTransactions.addActionListener(this::onTransactions);
+        btnOlder.addActionListener(this::onOlderTransactions);
     }
 
+    // All database work goes through the async client; its callbacks run on the EDT.
+
     private void onLoad(ActionEvent e) {
-    try {
-        int id = Integer.parseInt(txtAccountId.getText().trim());
+        int id;
+        try {
+            id = Integer.parseInt(txtAccountId.getText().trim());
+        } catch (NumberFormatException ex) {
+            showMessage("Invalid account id");
+            return;
+        }
         String pin = JOptionPane.showInputDialog(this, "Enter PIN for account " + id + ":");
         if (pin == null) return; // cancelled
-        // verify pin hash from DB
-        try (java.sql.Connection conn = java.sql.DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASS);
-             java.sql.PreparedStatement ps = conn.prepareStatement("SELECT pin_hash FROM accounts WHERE account_id = ?")) {
-            ps.setInt(1, id);
-            try (java.sql.ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    String pinHash = rs.getString("pin_hash"); // may be null if not set
-                    if (pinHash == null || pinHash.isEmpty()) {
-                        showMessage("No PIN set for this account on server. Contact admin.");
-                        return;
-                    }
-                    if (!HashUtil.sha256Hex(pin).equalsIgnoreCase(pinHash)) {
-                        showMessage("Invalid PIN");
-                        return;
-                    }
-                } else {
-                    showMessage("Account not found");
-                    return;
-                }
+        txtArea.setText("Loading account " + id + "...");
+        client.login(terminalId, id, pin).whenComplete((a, ex) -> {
+            if (ex != null) {
+                Throwable cause = AsyncAccountClient.causeOf(ex);
+                txtArea.setText("");
+                if (cause instanceof AuthenticationException) showMessage(cause.getMessage());
+                else showMessage("DB error: " + cause.getMessage());
+                return;
             }
-        } catch (java.sql.SQLException ex) {
-            showMessage("DB error during PIN check: " + ex.getMessage());
-            return;
-        }
-
-        // try cache first
-        Account a = cache.get(id);
-        if (a == null) {
-            a = dao.findById(id);
-            if (a != null) cache.put(a);
-        }
-        if (a == null) {
-            showMessage("Account not found");
-            return;
-        }
-        currentAccount = a;
-        lblName.setText(a.getOwnerName());
-        lblBalance.setText(a.getBalance().toString());
-        txtArea.setText("Loaded account: " + a);
-    } catch (NumberFormatException ex) {
-        showMessage("Invalid account id");
-    } catch (DatabaseException ex) {
-        showMessage("DB error: " + ex.getMessage());
+            currentAccount = a;
+            historyCursor = null;
+            lblName.setText(a.getOwnerName());
+            lblBalance.setText(a.getBalance().toString());
+            txtArea.setText("Loaded account: " + a);
+        });
     }
-}
-private void onWithdraw(ActionEvent e) {
+
+    private void onWithdraw(ActionEvent e) {
         if (!checkLoaded()) return;
         String s = JOptionPane.showInputDialog(this, "Amount to withdraw:");
         if (s == null) return;
         try {
             BigDecimal amt = new BigDecimal(s);
-            // start worker thread (demo multithreading)
-            new TransactionWorker(dao, currentAccount.getAccountId(), amt, true).start();
-            refreshBalance();
+            int id = currentAccount.getAccountId();
+            client.withdraw(id, amt).whenComplete((a, ex) -> afterCommit(id, a, ex, "Withdraw"));
         } catch (NumberFormatException ex) {
             showMessage("Invalid amount");
         }
@@ -135,8 +178,8 @@ private void onWithdraw(ActionEvent e) {
         if (s == null) return;
         try {
             BigDecimal amt = new BigDecimal(s);
-            new TransactionWorker(dao, currentAccount.getAccountId(), amt, false).start();
-            refreshBalance();
+            int id = currentAccount.getAccountId();
+            client.deposit(id, amt).whenComplete((a, ex) -> afterCommit(id, a, ex, "Deposit"));
         } catch (NumberFormatException ex) {
             showMessage("Invalid amount");
         }
@@ -151,29 +194,57 @@ private void onWithdraw(ActionEvent e) {
         try {
             int toId = Integer.parseInt(sTo);
             BigDecimal amt = new BigDecimal(sAmt);
-            // perform transfer in background thread
-            new Thread(() -> {
-                try {
-                    dao.transfer(currentAccount.getAccountId(), toId, amt);
-                    SwingUtilities.invokeLater(this::refreshBalance);
-                } catch (DatabaseException ex) {
-                    SwingUtilities.invokeLater(() -> showMessage("Transfer failed: " + ex.getMessage()));
-                }
-            }).start();
+            int fromId = currentAccount.getAccountId();
+            client.transfer(fromId, toId, amt).whenComplete((a, ex) -> afterCommit(fromId, a, ex, "Transfer"));
         } catch (NumberFormatException ex) {
             showMessage("Invalid input");
         }
     }
 
+    // a reply for an account that is no longer shown is dropped
+    private boolean isShowing(int accountId) {
+        return currentAccount != null && currentAccount.getAccountId() == accountId;
+    }
+
+    private void afterCommit(int accountId, Account updated, Throwable ex, String what) {
+        if (ex != null) {
+            showMessage(what + " failed: " + AsyncAccountClient.causeOf(ex).getMessage());
+            return;
+        }
+        if (updated != null && isShowing(accountId)) showBalance(updated);
+    }
+
     private void onTransactions(ActionEvent e) {
-        if (!checkLoaded()) return;
-        try {
-            List<String> tx = dao.getTransactions(currentAccount.getAccountId());
-            txtArea.setText("Transactions:\n");
-            for (String t : tx) txtArea.append(t + "\n");
-        } catch (DatabaseException ex) {
-            showMessage("Error loading transactions");
+        if (!checkLoaded() || historyLoading) return;
+        historyCursor = null;
+        txtArea.setText("Transactions:\n");
+        loadHistoryPage();
+    }
+
+    private void onOlderTransactions(ActionEvent e) {
+        if (!checkLoaded() || historyLoading) return;
+        if (historyCursor == null) {
+            showMessage("No older transactions");
+            return;
         }
+        loadHistoryPage();
+    }
+
+    private void loadHistoryPage() {
+        int id = currentAccount.getAccountId();
+        historyLoading = true;
+        client.historyPage(id, historyCursor, DBConfig.HISTORY_PAGE_SIZE).whenComplete((page, ex) -> {
+            historyLoading = false;
+            if (!isShowing(id)) return;
+            if (ex != null) {
+                showMessage("Error loading transactions");
+                return;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (TransactionRecord t : page) sb.append(t).append('\n');
+            txtArea.append(sb.toString());
+            historyCursor = page.size() < DBConfig.HISTORY_PAGE_SIZE ? null : page.get(page.size() - 1);
+        });
     }
 
     private boolean checkLoaded() {
@@ -184,25 +255,47 @@ private void onWithdraw(ActionEvent e) {
         return true;
     }
 
-    private void refreshBalance() {
-        try {
-            Account a = dao.findById(currentAccount.getAccountId());
-            if (a != null) {
-                currentAccount = a;
-                cache.put(a);
-                lblBalance.setText(a.getBalance().toString());
-                txtArea.append("\nBalance refreshed: " + a.getBalance());
-            }
-        } catch (DatabaseException ex) {
-            showMessage("Error refreshing: " + ex.getMessage());
-        }
+    private void showBalance(Account a) {
+        currentAccount = a;
+        lblBalance.setText(a.getBalance().toString());
+        txtArea.append("\nBalance refreshed: " + a.getBalance());
     }
 
     private void showMessage(String s) {
         JOptionPane.showMessageDialog(this, s);
     }
 
-    public static void main(String[] args) {
+    /**
+     * Runs the startup path once and exits, so that {@code -XX:ArchiveClassesAtExit} archives the classes it loaded.
+     * Works without a database; on a machine without a display only the non-Swing part runs.
+     */
+    private static void train() throws Exception {
+        if (GraphicsEnvironment.isHeadless()) {
+            ConnectionPool pool = new ConnectionPool(DBConfig.URL, DBConfig.USER, DBConfig.PASS);
+            AccountDAO dao = new AccountDAO(pool);
+            InMemoryCache cache = new InMemoryCache();
+            new StartupManager(pool, dao, cache).start().join();
+            new AuthService(dao, cache);
+            new TransactionExecutor().close();
+            dao.close();
+            pool.close();
+        } else {
+            ATMGui[] gui = new ATMGui[1];
+            SwingUtilities.invokeAndWait(() -> gui[0] = new ATMGui());
+            gui[0].ready.join();
+            SwingUtilities.invokeAndWait(() -> {
+                gui[0].shutdown();
+                gui[0].dispose();
+            });
+        }
+        System.exit(0);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (Arrays.asList(args).contains("--cds-training")) {
+            train();
+            return;
+        }
         SwingUtilities.invokeLater(() -> {
             ATMGui gui = new ATMGui();
             gui.setVisible(true);
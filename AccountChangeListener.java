@@ -0,0 +1,8 @@
+package atm;
+
+/**
+ * Notified after a transaction that changed an account's balance has committed.
+ */
+public interface AccountChangeListener {
+    void accountChanged(int accountId);
+}
@@ -0,0 +1,19 @@
+package atm;
+
+/**
+ * An account row together with its stored PIN hash, as read by a single query at login.
+ */
+public class AccountCredentials {
+    private final Account account;
+    private final String pinHash;
+
+    public AccountCredentials(Account account, String pinHash) {
+        this.account = account;
+        this.pinHash = pinHash;
+    }
+
+    public Account getAccount() { return account; }
+
+    // hex SHA-256 of the PIN, null or empty if no PIN was set
+    public String getPinHash() { return pinHash; }
+}
@@ -2,33 +2,183 @@ package atm;
 
 import java.math.BigDecimal;
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
-public class AccountDAO implements Transactionable {
-    public AccountDAO() {
+public class AccountDAO implements Transactionable, AutoCloseable {
+    /**
+     * LOCKING reads the row with SELECT ... FOR UPDATE and applies the withdrawal rules in Java.
+     * CONDITIONAL_UPDATE pushes the rules into a single UPDATE and reads the outcome from the affected-row count.
+     * GROUP_COMMIT applies the same conditional updates through a {@link GroupCommitWriter}, so concurrent
+     * callers share one transaction and one batched ledger insert.
+     */
+    public enum ExecutionMode { LOCKING, CONDITIONAL_UPDATE, GROUP_COMMIT }
+
+    // SQL text doubles as the statement-cache key, so keep each statement in one place
+    private static final String SQL_UPDATE_BALANCE = "UPDATE accounts SET balance = ? WHERE account_id = ?";
+    private static final String SQL_INSERT_TRANSACTION = "INSERT INTO transactions(account_id, type, amount, remark, timestamp) "
+            + "VALUES (?, ?, ?, ?, COALESCE(?, CURRENT_TIMESTAMP))";
+    // adds one commit's rows to their day's rollup (today unless the rows carry their own time) and takes the closing
+    // balance from the row this transaction just changed, less whatever the same commit adds on later days
+    private static final String SQL_UPSERT_DAILY_SUMMARY = "INSERT INTO account_daily_summary(account_id, summary_date, txn_count, "
+            + "debit_count, credit_count, debit_total, credit_total, closing_balance) "
+            + "SELECT account_id, COALESCE(?, CURRENT_DATE), ?, ?, ?, ?, ?, balance - ? FROM accounts WHERE account_id = ? "
+            + "ON DUPLICATE KEY UPDATE txn_count = txn_count + VALUES(txn_count), debit_count = debit_count + VALUES(debit_count), "
+            + "credit_count = credit_count + VALUES(credit_count), debit_total = debit_total + VALUES(debit_total), "
+            + "credit_total = credit_total + VALUES(credit_total), closing_balance = VALUES(closing_balance)";
+    // same rules as SavingsAccount.canWithdraw / CurrentAccount.canWithdraw, evaluated under the row lock
+    private static final String SQL_CONDITIONAL_DEBIT = "UPDATE accounts SET balance = balance - ? WHERE account_id = ? "
+            + "AND balance - ? >= CASE WHEN UPPER(type) = 'SAVINGS' THEN ? ELSE ? END";
+    private static final String SQL_CREDIT = "UPDATE accounts SET balance = balance + ? WHERE account_id = ?";
+    private static final String SQL_EXISTS = "SELECT 1 FROM accounts WHERE account_id = ?";
+    private static final String SQL_LOCK_ACCOUNT = "SELECT account_id, owner_name, balance, type FROM accounts WHERE account_id = ? FOR UPDATE";
+    private static final int LOCK_GROUP_SIZE = 100;
+    private static final String SQL_FIND_ACCOUNTS = "SELECT account_id, owner_name, balance, type FROM accounts WHERE account_id IN ("
+            + String.join(", ", Collections.nCopies(LOCK_GROUP_SIZE, "?")) + ")";
+    private static final String SQL_LOCK_ACCOUNTS = SQL_FIND_ACCOUNTS + " ORDER BY account_id FOR UPDATE";
+    private static final String SQL_FIND_REPLAY_STATE = "SELECT applied_seq FROM ledger_replay_state WHERE journal_id = ?";
+    private static final String SQL_INSERT_REPLAY_STATE = "INSERT INTO ledger_replay_state(journal_id, applied_seq) VALUES (?, ?)";
+    // only moves forward from the sequence the replayer read, so a batch another attempt already applied matches no row
+    private static final String SQL_ADVANCE_REPLAY_STATE = "UPDATE ledger_replay_state SET applied_seq = ? "
+            + "WHERE journal_id = ? AND applied_seq = ?";
+    private static final String SQL_CURRENT_DATE = "SELECT CURRENT_DATE";
+    private static final String SQL_MOST_ACTIVE = "SELECT account_id FROM account_daily_summary WHERE summary_date >= ? "
+            + "GROUP BY account_id ORDER BY SUM(txn_count) DESC LIMIT ?";
+    // history reads walk idx_transactions_account_time (account_id, timestamp, id)
+    private static final String SQL_HISTORY_COLUMNS = "SELECT id, account_id, timestamp, type, amount, remark FROM transactions ";
+    private static final String SQL_HISTORY_ALL = SQL_HISTORY_COLUMNS
+            + "WHERE account_id = ? ORDER BY timestamp DESC, id DESC";
+    private static final String SQL_HISTORY_FIRST = SQL_HISTORY_ALL + " LIMIT ?";
+    private static final String SQL_HISTORY_AFTER = SQL_HISTORY_COLUMNS
+            + "WHERE account_id = ? AND (timestamp < ? OR (timestamp = ? AND id < ?)) ORDER BY timestamp DESC, id DESC LIMIT ?";
+
+    private final ConnectionProvider connections;
+    private final ReplicaRouter reads;
+    private final ExecutionMode mode;
+    private final GroupCommitWriter groupCommit;
+    private final TransferEngine transfers;
+    private final AccountLockTable locks = new AccountLockTable();
+    private final OperationTimer findTimer = new OperationTimer("dao_find_by_id", "AccountDAO.findById");
+    private final OperationTimer historyTimer = new OperationTimer("dao_history", "AccountDAO transaction history reads");
+    private final List<AccountChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    public AccountDAO(ConnectionProvider connections) {
+        this(connections, DBConfig.EXECUTION_MODE);
+    }
+
+    public AccountDAO(ConnectionProvider connections, ExecutionMode mode) {
+        this(connections, null, mode);
+    }
+
+    /** Read-only lookups go through {@code reads} when it is not null; everything else uses {@code connections}. */
+    public AccountDAO(ConnectionProvider connections, ReplicaRouter reads, ExecutionMode mode) {
+        this.connections = connections;
+        this.reads = reads;
+        this.mode = mode;
+        this.transfers = new TransferEngine(connections);
+        this.groupCommit = mode == ExecutionMode.GROUP_COMMIT
+                ? new GroupCommitWriter(transfers, this::lockAccounts, this::insertTransactions,
+                        DBConfig.GROUP_COMMIT_MAX_BATCH, DBConfig.GROUP_COMMIT_MAX_DELAY_MS)
+                : null;
+    }
+
+    public ExecutionMode getExecutionMode() { return mode; }
+
+    public GroupCommitWriter getGroupCommitWriter() { return groupCommit; }
+
+    public TransferEngine getTransferEngine() { return transfers; }
+
+    public AccountLockTable getLockTable() { return locks; }
+
+    public ReplicaRouter getReplicaRouter() { return reads; }
+
+    /** Adds the DAO's read timers, account lock waits and transfer retry counts to {@code registry}. */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.register(findTimer);
+        registry.register(historyTimer);
+        registry.histogram("account_lock_wait", "Wait for the in-process account lock", locks.getWaitHistogram());
+        registry.gauge("account_lock_contended_total", "Account lock acquisitions that had to wait",
+                locks::getTotalContendedAcquisitions);
+        registry.gauge("transfer_retries_total", "Transfers retried after a deadlock or lock timeout", transfers::getRetryCount);
+        registry.gauge("transfer_deadlocks_total", "Deadlocks reported by the database", transfers::getDeadlockCount);
+        registry.gauge("transfer_lock_timeouts_total", "Lock-wait timeouts reported by the database", transfers::getLockTimeoutCount);
+    }
+
+    // called after every committed balance change, e.g. to invalidate cached accounts
+    public void addChangeListener(AccountChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        if (groupCommit != null) groupCommit.close();
+    }
+
+    private Connection readConnection(int accountId) throws SQLException {
+        return reads == null ? connections.getConnection() : reads.getReadConnection(accountId);
+    }
+
+    private Connection readConnection() throws SQLException {
+        return reads == null ? connections.getConnection() : reads.getReadConnection();
+    }
+
+    private void awaitGroupCommit(CompletableFuture<Void> result) throws DatabaseException {
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-        } catch (ClassNotFoundException e) {
-            // driver not found
-            e.printStackTrace();
+            result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted while waiting for commit", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DatabaseException) throw (DatabaseException) e.getCause();
+            throw new DatabaseException("Group commit failed", e.getCause());
         }
     }
 
     public Account findById(int id) throws DatabaseException {
+        return find(id, false);
+    }
+
+    /**
+     * Like {@link #findById}, but always reads the primary, never a replica that may lag behind it; for callers
+     * that keep the balance as the authoritative one, such as {@link ShardedLedger}.
+     */
+    public Account findByIdOnPrimary(int id) throws DatabaseException {
+        return find(id, true);
+    }
+
+    private Account find(int id, boolean primary) throws DatabaseException {
+        long start = System.nanoTime();
+        try {
+            Account a = queryById(id, primary);
+            findTimer.record(start, a == null ? OperationTimer.Outcome.NOT_FOUND : OperationTimer.Outcome.SUCCESS);
+            return a;
+        } catch (DatabaseException e) {
+            findTimer.failure(start, e);
+            throw e;
+        }
+    }
+
+    private Account queryById(int id, boolean primary) throws DatabaseException {
         String sql = "SELECT account_id, owner_name, balance, type FROM accounts WHERE account_id = ?";
-        try (Connection conn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASS);
+        try (Connection conn = primary ? connections.getConnection() : readConnection(id);
              PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, id);
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    String type = rs.getString("type");
-                    int accountId = rs.getInt("account_id");
-                    String owner = rs.getString("owner_name");
-                    BigDecimal bal = rs.getBigDecimal("balance");
-                    if ("SAVINGS".equalsIgnoreCase(type)) return new SavingsAccount(accountId, owner, bal);
-                    else return new CurrentAccount(accountId, owner, bal);
-                }
+                if (rs.next()) return readAccount(rs);
                 return null;
             }
         } catch (SQLException e) {
@@ -36,8 +186,86 @@ public class AccountDAO implements Transactionable {
         }
     }
 
+    // account row and PIN hash in one round trip, for login
+    public AccountCredentials findCredentials(int id) throws DatabaseException {
+        String sql = "SELECT account_id, owner_name, balance, type, pin_hash FROM accounts WHERE account_id = ?";
+        try (Connection conn = readConnection(id);
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) return new AccountCredentials(readAccount(rs), rs.getString("pin_hash"));
+                return null;
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException("Error finding account", e);
+        }
+    }
+
+    /** Loads the given accounts a fixed-size IN list at a time; ids with no account are left out. */
+    public List<Account> findByIds(List<Integer> ids) throws DatabaseException {
+        List<Account> out = new ArrayList<>(ids.size());
+        if (ids.isEmpty()) return out;
+        try (Connection conn = readConnection();
+             PreparedStatement ps = conn.prepareStatement(SQL_FIND_ACCOUNTS)) {
+            for (int start = 0; start < ids.size(); start += LOCK_GROUP_SIZE) {
+                for (int i = 0; i < LOCK_GROUP_SIZE; i++) {
+                    ps.setInt(i + 1, ids.get(Math.min(start + i, ids.size() - 1)));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) out.add(readAccount(rs));
+                }
+            }
+            return out;
+        } catch (SQLException e) {
+            throw new DatabaseException("Error finding accounts", e);
+        }
+    }
+
+    /** Ids of the accounts with the most transactions over the last {@code days} days, busiest first. */
+    public List<Integer> findMostActiveAccountIds(int days, int limit) throws DatabaseException {
+        List<Integer> out = new ArrayList<>();
+        try (Connection conn = readConnection();
+             PreparedStatement ps = conn.prepareStatement(SQL_MOST_ACTIVE)) {
+            // rollups are keyed by the database's CURRENT_DATE, so count the days back from its clock, not ours
+            ps.setDate(1, Date.valueOf(currentDate(conn).minusDays(days)));
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(rs.getInt(1));
+            }
+            return out;
+        } catch (SQLException e) {
+            throw new DatabaseException("Error finding active accounts", e);
+        }
+    }
+
+    private static LocalDate currentDate(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SQL_CURRENT_DATE);
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getDate(1).toLocalDate();
+        }
+    }
+
+    private Account lockAccount(Connection conn, int accountId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SQL_LOCK_ACCOUNT)) {
+            ps.setInt(1, accountId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? readAccount(rs) : null;
+            }
+        }
+    }
+
+    private static Account readAccount(ResultSet rs) throws SQLException {
+        String type = rs.getString("type");
+        int accountId = rs.getInt("account_id");
+        String owner = rs.getString("owner_name");
+        BigDecimal bal = rs.getBigDecimal("balance");
+        if ("SAVINGS".equalsIgnoreCase(type)) return new SavingsAccount(accountId, owner, bal);
+        else return new CurrentAccount(accountId, owner, bal);
+    }
+
     public void updateBalance(Connection conn, int accountId, BigDecimal newBalance) throws SQLException {
-        try (PreparedStatement ps = conn.prepareStatement("UPDATE accounts SET balance = ? WHERE account_id = ?")) {
+        try (PreparedStatement ps = conn.prepareStatement(SQL_UPDATE_BALANCE)) {
             ps.setBigDecimal(1, newBalance);
             ps.setInt(2, accountId);
             ps.executeUpdate();
@@ -45,15 +273,33 @@ public class AccountDAO implements Transactionable {
     }
 
     public List<String> getTransactions(int accountId) throws DatabaseException {
-        String sql = "SELECT timestamp, type, amount, remark FROM transactions WHERE account_id = ? ORDER BY timestamp DESC";
         List<String> out = new ArrayList<>();
-        try (Connection conn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASS);
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, accountId);
+        forEachTransaction(accountId, t -> out.add(t.toString()));
+        return out;
+    }
+
+    /**
+     * Returns up to {@code limit} transactions older than {@code after} (or the newest ones when it is null),
+     * newest first. Pass the last record of a page to fetch the next one.
+     */
+    public List<TransactionRecord> getTransactionPage(int accountId, TransactionRecord after, int limit) throws DatabaseException {
+        return historyTimer.time(() -> queryTransactionPage(accountId, after, limit));
+    }
+
+    private List<TransactionRecord> queryTransactionPage(int accountId, TransactionRecord after, int limit) throws DatabaseException {
+        List<TransactionRecord> out = new ArrayList<>(limit);
+        try (Connection conn = readConnection(accountId);
+             PreparedStatement ps = conn.prepareStatement(after == null ? SQL_HISTORY_FIRST : SQL_HISTORY_AFTER)) {
+            int i = 1;
+            ps.setInt(i++, accountId);
+            if (after != null) {
+                ps.setTimestamp(i++, after.getTimestamp());
+                ps.setTimestamp(i++, after.getTimestamp());
+                ps.setInt(i++, after.getId());
+            }
+            ps.setInt(i, limit);
             try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    out.add(rs.getTimestamp("timestamp") + " " + rs.getString("type") + " " + rs.getBigDecimal("amount") + " " + rs.getString("remark"));
-                }
+                while (rs.next()) out.add(readTransaction(rs));
             }
             return out;
         } catch (SQLException e) {
@@ -61,38 +307,117 @@ public class AccountDAO implements Transactionable {
         }
     }
 
-    private void insertTransaction(Connection conn, int accountId, String type, BigDecimal amount, String remark) throws SQLException {
-        try (PreparedStatement ps = conn.prepareStatement(
-                "INSERT INTO transactions(account_id, type, amount, remark) VALUES (?, ?, ?, ?)")) {
+    // Streams the whole history newest first through a server-side cursor instead of buffering it
+    public void forEachTransaction(int accountId, Consumer<TransactionRecord> action) throws DatabaseException {
+        historyTimer.time(() -> {
+            streamTransactions(accountId, action);
+            return null;
+        });
+    }
+
+    private void streamTransactions(int accountId, Consumer<TransactionRecord> action) throws DatabaseException {
+        try (Connection conn = readConnection(accountId);
+             PreparedStatement ps = conn.prepareStatement(SQL_HISTORY_ALL)) {
+            ps.setFetchSize(DBConfig.HISTORY_FETCH_SIZE);
             ps.setInt(1, accountId);
-            ps.setString(2, type);
-            ps.setBigDecimal(3, amount);
-            ps.setString(4, remark);
-            ps.executeUpdate();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) action.accept(readTransaction(rs));
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException("Error loading transactions", e);
         }
     }
 
+    private static TransactionRecord readTransaction(ResultSet rs) throws SQLException {
+        return new TransactionRecord(rs.getInt("id"), rs.getInt("account_id"), rs.getTimestamp("timestamp"),
+                rs.getString("type"), rs.getBigDecimal("amount"), rs.getString("remark"));
+    }
+
+    private void insertTransaction(Connection conn, int accountId, String type, BigDecimal amount, String remark) throws SQLException {
+        insertTransactions(conn, Collections.singletonList(new LedgerEntry(accountId, type, amount, remark)));
+    }
+
     // Transactional withdraw
     @Override
     public void withdraw(int accountId, java.math.BigDecimal amount) throws DatabaseException {
+        checkAmount(amount);
+        applyWithdraw(accountId, amount);
+        fireChanged(accountId);
+    }
+
+    @Override
+    public void deposit(int accountId, java.math.BigDecimal amount) throws DatabaseException {
+        checkAmount(amount);
+        applyDeposit(accountId, amount);
+        fireChanged(accountId);
+    }
+
+    @Override
+    public void transfer(int fromAccountId, int toAccountId, java.math.BigDecimal amount) throws DatabaseException {
+        checkAmount(amount);
+        if (fromAccountId == toAccountId) throw new DatabaseException("Cannot transfer to the same account", null, DatabaseException.Reason.INVALID);
+        applyTransfer(fromAccountId, toAccountId, amount);
+        fireChanged(fromAccountId);
+        fireChanged(toAccountId);
+    }
+
+    // the SQL rules only bound the result, so a negative amount would pass them; same checks as ShardedLedger
+    private static void checkAmount(BigDecimal amount) throws DatabaseException {
+        if (!isValidAmount(amount)) {
+            throw new DatabaseException("Amount must be > 0 with at most " + MinorUnits.SCALE + " decimal places", null,
+                    DatabaseException.Reason.INVALID);
+        }
+    }
+
+    private static boolean isValidAmount(BigDecimal amount) {
+        return amount != null && amount.signum() > 0 && amount.stripTrailingZeros().scale() <= MinorUnits.SCALE;
+    }
+
+    private void fireChanged(int accountId) {
+        // pin first, so a listener that reloads the account cannot read it back from a lagging replica
+        if (reads != null) reads.pin(accountId);
+        for (AccountChangeListener l : listeners) l.accountChanged(accountId);
+    }
+
+    private void applyWithdraw(int accountId, BigDecimal amount) throws DatabaseException {
+        if (mode == ExecutionMode.GROUP_COMMIT) {
+            awaitGroupCommit(groupCommit.submit(conn -> {
+                if (!conditionalDebit(conn, accountId, amount)) {
+                    if (!exists(conn, accountId)) throw new DatabaseException("Account not found", null, DatabaseException.Reason.NOT_FOUND);
+                    throw new DatabaseException("Insufficient funds", null, DatabaseException.Reason.INSUFFICIENT_FUNDS);
+                }
+                return Collections.singletonList(new LedgerEntry(accountId, "WITHDRAW", amount, "ATM withdraw"));
+            }, accountId));
+            return;
+        }
+        // the single group-commit writer already serializes; here same-account calls queue in the JVM
+        // instead of on the row lock
+        AccountLockTable.Held held = locks.lock(accountId);
+        try {
+            if (mode == ExecutionMode.CONDITIONAL_UPDATE) conditionalWithdraw(accountId, amount);
+            else lockingWithdraw(accountId, amount);
+        } finally {
+            held.close();
+        }
+    }
+
+    private void lockingWithdraw(int accountId, BigDecimal amount) throws DatabaseException {
         String sel = "SELECT balance, type, owner_name FROM accounts WHERE account_id = ? FOR UPDATE";
-        try (Connection conn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASS)) {
+        try (Connection conn = connections.getConnection()) {
             conn.setAutoCommit(false);
             try (PreparedStatement ps = conn.prepareStatement(sel)) {
                 ps.setInt(1, accountId);
                 try (ResultSet rs = ps.executeQuery()) {
-                    if (!rs.next()) throw new DatabaseException("Account not found", null);
+                    if (!rs.next()) throw new DatabaseException("Account not found", null, DatabaseException.Reason.NOT_FOUND);
                     BigDecimal balance = rs.getBigDecimal("balance");
                     String type = rs.getString("type");
                     // create a local Account object to use canWithdraw logic
                     Account a = "SAVINGS".equalsIgnoreCase(type) ? new SavingsAccount(accountId, rs.getString("owner_name"), balance)
                             : new CurrentAccount(accountId, rs.getString("owner_name"), balance);
-                    synchronized (a) {
-                        if (!a.canWithdraw(amount)) throw new DatabaseException("Insufficient funds", null);
-                        BigDecimal newBalance = balance.subtract(amount);
-                        updateBalance(conn, accountId, newBalance);
-                        insertTransaction(conn, accountId, "WITHDRAW", amount, "ATM withdraw");
-                    }
+                    if (!a.canWithdraw(amount)) throw new DatabaseException("Insufficient funds", null, DatabaseException.Reason.INSUFFICIENT_FUNDS);
+                    BigDecimal newBalance = balance.subtract(amount);
+                    updateBalance(conn, accountId, newBalance);
+                    insertTransaction(conn, accountId, "WITHDRAW", amount, "ATM withdraw");
                 }
             }
             conn.commit();
@@ -101,15 +426,85 @@ public class AccountDAO implements Transactionable {
         }
     }
 
-    @Override
-    public void deposit(int accountId, java.math.BigDecimal amount) throws DatabaseException {
-        try (Connection conn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASS)) {
+    private void conditionalWithdraw(int accountId, BigDecimal amount) throws DatabaseException {
+        try (Connection conn = connections.getConnection()) {
+            conn.setAutoCommit(false);
+            if (!conditionalDebit(conn, accountId, amount)) {
+                if (!exists(conn, accountId)) throw new DatabaseException("Account not found", null, DatabaseException.Reason.NOT_FOUND);
+                throw new DatabaseException("Insufficient funds", null, DatabaseException.Reason.INSUFFICIENT_FUNDS);
+            }
+            insertTransaction(conn, accountId, "WITHDRAW", amount, "ATM withdraw");
+            conn.commit();
+        } catch (SQLException e) {
+            throw new DatabaseException("Error during withdraw", e);
+        }
+    }
+
+    // true when the row was debited; false when it is missing or the withdrawal rules reject the amount
+    private boolean conditionalDebit(Connection conn, int accountId, BigDecimal amount) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SQL_CONDITIONAL_DEBIT)) {
+            ps.setBigDecimal(1, amount);
+            ps.setInt(2, accountId);
+            ps.setBigDecimal(3, amount);
+            ps.setBigDecimal(4, SavingsAccount.MINIMUM_BALANCE);
+            ps.setBigDecimal(5, CurrentAccount.OVERDRAFT_LIMIT.negate());
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    private boolean credit(Connection conn, int accountId, BigDecimal amount) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SQL_CREDIT)) {
+            ps.setBigDecimal(1, amount);
+            ps.setInt(2, accountId);
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    private boolean exists(Connection conn, int accountId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SQL_EXISTS)) {
+            ps.setInt(1, accountId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private void applyDeposit(int accountId, BigDecimal amount) throws DatabaseException {
+        if (mode == ExecutionMode.GROUP_COMMIT) {
+            awaitGroupCommit(groupCommit.submit(conn -> {
+                if (!credit(conn, accountId, amount)) throw new DatabaseException("Account not found", null, DatabaseException.Reason.NOT_FOUND);
+                return Collections.singletonList(new LedgerEntry(accountId, "DEPOSIT", amount, "ATM deposit"));
+            }, accountId));
+            return;
+        }
+        AccountLockTable.Held held = locks.lock(accountId);
+        try {
+            if (mode == ExecutionMode.CONDITIONAL_UPDATE) conditionalDeposit(accountId, amount);
+            else lockingDeposit(accountId, amount);
+        } finally {
+            held.close();
+        }
+    }
+
+    private void conditionalDeposit(int accountId, BigDecimal amount) throws DatabaseException {
+        try (Connection conn = connections.getConnection()) {
+            conn.setAutoCommit(false);
+            if (!credit(conn, accountId, amount)) throw new DatabaseException("Account not found", null, DatabaseException.Reason.NOT_FOUND);
+            insertTransaction(conn, accountId, "DEPOSIT", amount, "ATM deposit");
+            conn.commit();
+        } catch (SQLException e) {
+            throw new DatabaseException("Error during deposit", e);
+        }
+    }
+
+    private void lockingDeposit(int accountId, BigDecimal amount) throws DatabaseException {
+        try (Connection conn = connections.getConnection()) {
             conn.setAutoCommit(false);
             BigDecimal balance;
             try (PreparedStatement ps = conn.prepareStatement("SELECT balance, owner_name FROM accounts WHERE account_id = ? FOR UPDATE")) {
                 ps.setInt(1, accountId);
                 try (ResultSet rs = ps.executeQuery()) {
-                    if (!rs.next()) throw new DatabaseException("Account not found", null);
+                    if (!rs.next()) throw new DatabaseException("Account not found", null, DatabaseException.Reason.NOT_FOUND);
                     balance = rs.getBigDecimal("balance");
                     BigDecimal newBalance = balance.add(amount);
                     updateBalance(conn, accountId, newBalance);
@@ -122,45 +517,282 @@ public class AccountDAO implements Transactionable {
         }
     }
 
+    private void applyTransfer(int fromAccountId, int toAccountId, BigDecimal amount) throws DatabaseException {
+        if (mode == ExecutionMode.GROUP_COMMIT) {
+            awaitGroupCommit(groupCommit.submit(conn -> {
+                // check the recipient first so a rejected transfer leaves nothing to undo
+                if (!exists(conn, toAccountId)) throw new DatabaseException("One of accounts not found", null, DatabaseException.Reason.NOT_FOUND);
+                if (!conditionalDebit(conn, fromAccountId, amount)) {
+                    if (!exists(conn, fromAccountId)) throw new DatabaseException("One of accounts not found", null, DatabaseException.Reason.NOT_FOUND);
+                    throw new DatabaseException("Insufficient funds for transfer", null, DatabaseException.Reason.INSUFFICIENT_FUNDS);
+                }
+                credit(conn, toAccountId, amount);
+                return Arrays.asList(
+                        new LedgerEntry(fromAccountId, "TRANSFER_OUT", amount, "Transfer to " + toAccountId),
+                        new LedgerEntry(toAccountId, "TRANSFER_IN", amount, "Transfer from " + fromAccountId));
+            }, fromAccountId, toAccountId));
+            return;
+        }
+        // the stripes are taken per attempt, so a retry's backoff does not hold up other callers on them
+        transfers.execute(conn -> {
+            // lock the rows one at a time in ascending id order so crossing transfers queue instead of deadlocking
+            Account first = lockAccount(conn, Math.min(fromAccountId, toAccountId));
+            Account second = lockAccount(conn, Math.max(fromAccountId, toAccountId));
+            if (first == null || second == null) throw new DatabaseException("One of accounts not found", null, DatabaseException.Reason.NOT_FOUND);
+            Account fromAcc = first.getAccountId() == fromAccountId ? first : second;
+            Account toAcc = fromAcc == first ? second : first;
+            if (!fromAcc.canWithdraw(amount)) throw new DatabaseException("Insufficient funds for transfer", null, DatabaseException.Reason.INSUFFICIENT_FUNDS);
+            BigDecimal newFrom = fromAcc.getBalance().subtract(amount);
+            BigDecimal newTo = toAcc.getBalance().add(amount);
+            updateBalance(conn, fromAccountId, newFrom);
+            updateBalance(conn, toAccountId, newTo);
+            insertTransactions(conn, Arrays.asList(
+                    new LedgerEntry(fromAccountId, "TRANSFER_OUT", amount, "Transfer to " + toAccountId),
+                    new LedgerEntry(toAccountId, "TRANSFER_IN", amount, "Transfer from " + fromAccountId)));
+        }, () -> locks.lockBoth(fromAccountId, toAccountId));
+    }
+
+    /**
+     * Runs the instructions in chunks of {@code DBConfig.BATCH_CHUNK_SIZE}, one transaction per chunk.
+     * Each chunk locks every account it touches once, in ascending id order, applies the instructions
+     * in order against the locked balances, then writes one net balance update per account and all
+     * ledger rows as JDBC batches.
+     */
     @Override
-    public void transfer(int fromAccountId, int toAccountId, java.math.BigDecimal amount) throws DatabaseException {
-        try (Connection conn = DriverManager.getConnection(DBConfig.URL, DBConfig.USER, DBConfig.PASS)) {
-            conn.setAutoCommit(false);
-            // lock both accounts (order by id to avoid deadlocks)
-            int a1 = Math.min(fromAccountId, toAccountId);
-            int a2 = Math.max(fromAccountId, toAccountId);
-            try (PreparedStatement p1 = conn.prepareStatement("SELECT account_id, balance, type, owner_name FROM accounts WHERE account_id IN (?, ?) FOR UPDATE")) {
-                p1.setInt(1, a1);
-                p1.setInt(2, a2);
-                try (ResultSet rs = p1.executeQuery()) {
-                    BigDecimal balFrom = null, balTo = null;
-                    String typeFrom = null, ownerFrom = null;
+    public List<TransferResult> transferBatch(List<TransferInstruction> instructions) throws DatabaseException {
+        TransferResult[] results = new TransferResult[instructions.size()];
+        for (int start = 0; start < instructions.size(); start += DBConfig.BATCH_CHUNK_SIZE) {
+            int offset = start;
+            int end = Math.min(instructions.size(), start + DBConfig.BATCH_CHUNK_SIZE);
+            List<TransferInstruction> chunk = instructions.subList(start, end);
+            Set<Integer> touched = new TreeSet<>();
+            try {
+                transfers.execute(conn -> {
+                    touched.clear();
+                    applyBatchChunk(conn, chunk, results, offset, touched);
+                });
+            } catch (DatabaseException e) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    results[offset + i] = new TransferResult(chunk.get(i), TransferResult.Status.FAILED, e.getMessage());
+                }
+                continue;
+            }
+            for (int id : touched) fireChanged(id);
+        }
+        return Arrays.asList(results);
+    }
+
+    private void applyBatchChunk(Connection conn, List<TransferInstruction> chunk, TransferResult[] results, int offset,
+                                 Set<Integer> touched) throws SQLException {
+        Set<Integer> ids = new TreeSet<>();
+        for (TransferInstruction t : chunk) {
+            ids.add(t.getFromAccountId());
+            ids.add(t.getToAccountId());
+        }
+        Map<Integer, Account> locked = lockAccounts(conn, ids);
+        List<LedgerEntry> ledger = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            TransferInstruction t = chunk.get(i);
+            Account from = locked.get(t.getFromAccountId());
+            Account to = locked.get(t.getToAccountId());
+            TransferResult.Status status;
+            String message = null;
+            if (!isValidAmount(t.getAmount()) || t.getFromAccountId() == t.getToAccountId()) {
+                status = TransferResult.Status.INVALID;
+                message = "Amount must be > 0 with at most " + MinorUnits.SCALE + " decimal places and accounts must differ";
+            } else if (from == null || to == null) {
+                status = TransferResult.Status.ACCOUNT_NOT_FOUND;
+                message = "One of accounts not found";
+            } else if (!from.canWithdraw(t.getAmount())) {
+                status = TransferResult.Status.INSUFFICIENT_FUNDS;
+                message = "Insufficient funds for transfer";
+            } else {
+                // the locked Account objects carry the running balances for the rest of the chunk
+                from.withdraw(t.getAmount());
+                to.deposit(t.getAmount());
+                touched.add(from.getAccountId());
+                touched.add(to.getAccountId());
+                ledger.add(new LedgerEntry(from.getAccountId(), "TRANSFER_OUT", t.getAmount(), "Transfer to " + to.getAccountId()));
+                ledger.add(new LedgerEntry(to.getAccountId(), "TRANSFER_IN", t.getAmount(), "Transfer from " + from.getAccountId()));
+                status = TransferResult.Status.APPLIED;
+            }
+            results[offset + i] = new TransferResult(t, status, message);
+        }
+        try (PreparedStatement ps = conn.prepareStatement(SQL_UPDATE_BALANCE)) {
+            for (int id : touched) {
+                ps.setBigDecimal(1, locked.get(id).getBalance());
+                ps.setInt(2, id);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        insertTransactions(conn, ledger);
+    }
+
+    // locks the given accounts in ascending id order, a fixed-size IN list at a time
+    private Map<Integer, Account> lockAccounts(Connection conn, Set<Integer> sortedIds) throws SQLException {
+        Map<Integer, Account> out = new HashMap<>();
+        Integer[] ids = sortedIds.toArray(new Integer[0]);
+        try (PreparedStatement ps = conn.prepareStatement(SQL_LOCK_ACCOUNTS)) {
+            for (int start = 0; start < ids.length; start += LOCK_GROUP_SIZE) {
+                for (int i = 0; i < LOCK_GROUP_SIZE; i++) {
+                    // pad short groups with the last id so the statement text never changes
+                    ps.setInt(i + 1, ids[Math.min(start + i, ids.length - 1)]);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
                     while (rs.next()) {
-                        int id = rs.getInt("account_id");
-                        if (id == fromAccountId) {
-                            balFrom = rs.getBigDecimal("balance");
-                            typeFrom = rs.getString("type");
-                            ownerFrom = rs.getString("owner_name");
-                        } else if (id == toAccountId) {
-                            balTo = rs.getBigDecimal("balance");
-                        }
+                        Account a = readAccount(rs);
+                        out.put(a.getAccountId(), a);
                     }
-                    if (balFrom == null || balTo == null) throw new DatabaseException("One of accounts not found", null);
-                    Account fromAcc = "SAVINGS".equalsIgnoreCase(typeFrom) ? new SavingsAccount(fromAccountId, ownerFrom, balFrom) : new CurrentAccount(fromAccountId, ownerFrom, balFrom);
-                    synchronized (fromAcc) {
-                        if (!fromAcc.canWithdraw(amount)) throw new DatabaseException("Insufficient funds for transfer", null);
-                        BigDecimal newFrom = balFrom.subtract(amount);
-                        BigDecimal newTo = balTo.add(amount);
-                        updateBalance(conn, fromAccountId, newFrom);
-                        updateBalance(conn, toAccountId, newTo);
-                        insertTransaction(conn, fromAccountId, "TRANSFER_OUT", amount, "Transfer to " + toAccountId);
-                        insertTransaction(conn, toAccountId, "TRANSFER_IN", amount, "Transfer from " + fromAccountId);
+                }
+            }
+        }
+        return out;
+    }
+
+    // every ledger write goes through here, so the daily rollup commits atomically with its rows
+    private void insertTransactions(Connection conn, List<LedgerEntry> rows) throws SQLException {
+        if (rows.isEmpty()) return;
+        try (PreparedStatement ps = conn.prepareStatement(SQL_INSERT_TRANSACTION)) {
+            for (LedgerEntry row : rows) {
+                ps.setInt(1, row.getAccountId());
+                ps.setString(2, row.getType());
+                ps.setBigDecimal(3, row.getAmount());
+                ps.setString(4, row.getRemark());
+                ps.setTimestamp(5, row.getTimestamp());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        updateDailySummaries(conn, rows);
+    }
+
+    // one upsert per account and day, in ascending id order like the row locks the caller already holds;
+    // rows without a timestamp belong to today, after any dated ones
+    private void updateDailySummaries(Connection conn, List<LedgerEntry> rows) throws SQLException {
+        Comparator<LocalDate> day = Comparator.nullsLast(Comparator.naturalOrder());
+        Map<Integer, NavigableMap<LocalDate, DayTotals>> byAccount = new TreeMap<>();
+        for (LedgerEntry row : rows) {
+            LocalDate date = row.getTimestamp() == null ? null : row.getTimestamp().toLocalDateTime().toLocalDate();
+            byAccount.computeIfAbsent(row.getAccountId(), id -> new TreeMap<>(day))
+                    .computeIfAbsent(date, d -> new DayTotals()).add(row);
+        }
+        try (PreparedStatement ps = conn.prepareStatement(SQL_UPSERT_DAILY_SUMMARY)) {
+            for (Map.Entry<Integer, NavigableMap<LocalDate, DayTotals>> account : byAccount.entrySet()) {
+                BigDecimal later = BigDecimal.ZERO;
+                for (Map.Entry<LocalDate, DayTotals> e : account.getValue().descendingMap().entrySet()) {
+                    DayTotals t = e.getValue();
+                    ps.setDate(1, e.getKey() == null ? null : Date.valueOf(e.getKey()));
+                    ps.setInt(2, t.debitCount + t.creditCount);
+                    ps.setInt(3, t.debitCount);
+                    ps.setInt(4, t.creditCount);
+                    ps.setBigDecimal(5, t.debitTotal);
+                    ps.setBigDecimal(6, t.creditTotal);
+                    ps.setBigDecimal(7, later);
+                    ps.setInt(8, account.getKey());
+                    ps.addBatch();
+                    later = later.add(t.creditTotal).subtract(t.debitTotal);
+                }
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static final class DayTotals {
+        int debitCount;
+        int creditCount;
+        BigDecimal debitTotal = BigDecimal.ZERO;
+        BigDecimal creditTotal = BigDecimal.ZERO;
+
+        void add(LedgerEntry row) {
+            if (isDebit(row.getType())) {
+                debitCount++;
+                debitTotal = debitTotal.add(row.getAmount());
+            } else {
+                creditCount++;
+                creditTotal = creditTotal.add(row.getAmount());
+            }
+        }
+    }
+
+    /**
+     * Writes ledger entries whose rules were already enforced elsewhere (e.g. by {@link ShardedLedger}):
+     * one net balance adjustment per account, in ascending id order, plus all rows, in one transaction.
+     */
+    public void applyLedgerEntries(List<LedgerEntry> entries) throws DatabaseException {
+        Map<Integer, BigDecimal> net = netByAccount(entries);
+        transfers.execute(conn -> applyNet(conn, net, entries));
+        for (int id : net.keySet()) fireChanged(id);
+    }
+
+    /**
+     * Like {@link #applyLedgerEntries}, for journal records {@code afterSeq + 1 .. lastSeq}: the entries are only
+     * applied if the database has applied {@code journalId} exactly up to {@code afterSeq}, and the new position
+     * commits with them. Returns false, changing nothing, if the position has moved (the batch is already in).
+     */
+    public boolean applyJournalBatch(String journalId, long afterSeq, long lastSeq, List<LedgerEntry> entries)
+            throws DatabaseException {
+        Map<Integer, BigDecimal> net = netByAccount(entries);
+        boolean[] applied = new boolean[1];
+        transfers.execute(conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(SQL_ADVANCE_REPLAY_STATE)) {
+                ps.setLong(1, lastSeq);
+                ps.setString(2, journalId);
+                ps.setLong(3, afterSeq);
+                applied[0] = ps.executeUpdate() == 1;
+            }
+            if (applied[0]) applyNet(conn, net, entries);
+        });
+        if (!applied[0]) return false;
+        for (int id : net.keySet()) fireChanged(id);
+        return true;
+    }
+
+    /** How far {@code journalId} has been applied; a journal seen for the first time starts at {@code initialSeq}. */
+    public long findAppliedJournalSeq(String journalId, long initialSeq) throws DatabaseException {
+        long[] seq = new long[1];
+        transfers.execute(conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(SQL_FIND_REPLAY_STATE)) {
+                ps.setString(1, journalId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        seq[0] = rs.getLong(1);
+                        return;
                     }
                 }
             }
-            conn.commit();
-        } catch (SQLException e) {
-            throw new DatabaseException("Error during transfer", e);
+            try (PreparedStatement ps = conn.prepareStatement(SQL_INSERT_REPLAY_STATE)) {
+                ps.setString(1, journalId);
+                ps.setLong(2, initialSeq);
+                ps.executeUpdate();
+            }
+            seq[0] = initialSeq;
+        });
+        return seq[0];
+    }
+
+    private static Map<Integer, BigDecimal> netByAccount(List<LedgerEntry> entries) {
+        Map<Integer, BigDecimal> net = new TreeMap<>();
+        for (LedgerEntry e : entries) {
+            BigDecimal delta = isDebit(e.getType()) ? e.getAmount().negate() : e.getAmount();
+            net.merge(e.getAccountId(), delta, BigDecimal::add);
         }
+        return net;
+    }
+
+    private void applyNet(Connection conn, Map<Integer, BigDecimal> net, List<LedgerEntry> entries) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(SQL_CREDIT)) {
+            for (Map.Entry<Integer, BigDecimal> e : net.entrySet()) {
+                ps.setBigDecimal(1, e.getValue());
+                ps.setInt(2, e.getKey());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        insertTransactions(conn, entries);
+    }
+
+    private static boolean isDebit(String type) {
+        return "WITHDRAW".equals(type) || "TRANSFER_OUT".equals(type);
     }
 }
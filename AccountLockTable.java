@@ -0,0 +1,140 @@
+package atm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-process per-account serialization for AccountDAO.
+ * Account ids hash onto a fixed table of fair locks, so operations on one account run one at a time in
+ * arrival order before they reach the database, while accounts on different stripes run in parallel.
+ * Each stripe counts acquisitions, contended acquisitions and time spent waiting.
+ * <p>
+ * Operations are queued here, not coalesced: each one still runs its own transaction once it holds its stripe.
+ * The stripes only order callers; database row locks keep the balances correct. Paths that already group work
+ * do not take stripes: GROUP_COMMIT merges concurrent operations in its single writer, and transferBatch and
+ * applyLedgerEntries lock all their rows in ascending id order in one transaction. A batch chunk can touch
+ * hundreds of stripes, so taking them would stall single-account traffic on all of those stripes.
+ */
+public class AccountLockTable {
+    /** Releases the stripes taken by {@link #lock} or {@link #lockBoth}. */
+    public final class Held implements AutoCloseable {
+        private final int first;
+        private final int second; // -1 when only one stripe is held
+
+        private Held(int first, int second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void close() {
+            if (second >= 0) locks[second].unlock();
+            locks[first].unlock();
+        }
+    }
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+    private final AtomicLongArray acquisitions;
+    private final AtomicLongArray contended;
+    private final AtomicLongArray waitNanos;
+    private final LatencyHistogram waitHistogram = new LatencyHistogram();
+
+    public AccountLockTable() {
+        this(DBConfig.LOCK_STRIPES);
+    }
+
+    public AccountLockTable(int stripes) {
+        int n = Integer.highestOneBit(Math.max(1, stripes) * 2 - 1); // round up to a power of two
+        this.locks = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) locks[i] = new ReentrantLock(true);
+        this.mask = n - 1;
+        this.acquisitions = new AtomicLongArray(n);
+        this.contended = new AtomicLongArray(n);
+        this.waitNanos = new AtomicLongArray(n);
+    }
+
+    public int stripeOf(int accountId) {
+        int h = accountId * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public Held lock(int accountId) throws DatabaseException {
+        int s = stripeOf(accountId);
+        acquire(s);
+        return new Held(s, -1);
+    }
+
+    /** Locks the stripes of both accounts in stripe order, so two callers can never wait on each other. */
+    public Held lockBoth(int accountA, int accountB) throws DatabaseException {
+        int a = stripeOf(accountA);
+        int b = stripeOf(accountB);
+        if (a == b) {
+            acquire(a);
+            return new Held(a, -1);
+        }
+        int lo = Math.min(a, b);
+        int hi = Math.max(a, b);
+        acquire(lo);
+        try {
+            acquire(hi);
+        } catch (DatabaseException e) {
+            locks[lo].unlock();
+            throw e;
+        }
+        return new Held(lo, hi);
+    }
+
+    private void acquire(int stripe) throws DatabaseException {
+        ReentrantLock lock = locks[stripe];
+        acquisitions.incrementAndGet(stripe);
+        try {
+            // a zero-timeout tryLock still honours the fair queue
+            if (lock.tryLock(0, TimeUnit.NANOSECONDS)) {
+                waitHistogram.record(0);
+                return;
+            }
+            contended.incrementAndGet(stripe);
+            long start = System.nanoTime();
+            lock.lockInterruptibly();
+            long waited = System.nanoTime() - start;
+            waitNanos.addAndGet(stripe, waited);
+            waitHistogram.record(waited);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted while waiting for account lock", e);
+        }
+    }
+
+    public int getStripeCount() { return locks.length; }
+    public LatencyHistogram getWaitHistogram() { return waitHistogram; }
+    public long getAcquisitions(int stripe) { return acquisitions.get(stripe); }
+    public long getContendedAcquisitions(int stripe) { return contended.get(stripe); }
+    public long getWaitNanos(int stripe) { return waitNanos.get(stripe); }
+    public int getQueueLength(int stripe) { return locks[stripe].getQueueLength(); }
+
+    public long getTotalAcquisitions() { return sum(acquisitions); }
+    public long getTotalContendedAcquisitions() { return sum(contended); }
+    public long getTotalWaitNanos() { return sum(waitNanos); }
+
+    /** Stripe with the most time spent waiting, or -1 if no acquisition has waited yet. */
+    public int getHottestStripe() {
+        int best = -1;
+        long max = 0;
+        for (int i = 0; i < locks.length; i++) {
+            long w = waitNanos.get(i);
+            if (w > max) {
+                max = w;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static long sum(AtomicLongArray a) {
+        long n = 0;
+        for (int i = 0; i < a.length(); i++) n += a.get(i);
+        return n;
+    }
+}
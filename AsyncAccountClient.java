@@ -0,0 +1,109 @@
+package atm;
+
+import javax.swing.SwingUtilities;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Non-blocking front end to the DAO for the GUI.
+ * Every call runs on the {@link TransactionExecutor} and returns a future that completes on the Swing event
+ * dispatch thread, so callbacks can touch components directly. Identical reads already in flight are shared
+ * instead of queried again, and money movements complete with the account as reloaded after the commit.
+ */
+public class AsyncAccountClient {
+    private final TransactionExecutor executor;
+    private final Transactionable transactions;
+    private final AccountDAO dao;
+    private final InMemoryCache cache;
+    private final AuthService auth;
+    private final Executor callbacks;
+
+    private final Map<Integer, CompletableFuture<Account>> balanceReads = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<List<TransactionRecord>>> historyReads = new ConcurrentHashMap<>();
+
+    public AsyncAccountClient(TransactionExecutor executor, Transactionable transactions, AccountDAO dao,
+                              InMemoryCache cache, AuthService auth) {
+        this(executor, transactions, dao, cache, auth, SwingUtilities::invokeLater);
+    }
+
+    /** {@code callbacks} runs the completion of every returned future; the EDT unless testing headless. */
+    public AsyncAccountClient(TransactionExecutor executor, Transactionable transactions, AccountDAO dao,
+                              InMemoryCache cache, AuthService auth, Executor callbacks) {
+        this.executor = executor;
+        this.transactions = transactions;
+        this.dao = dao;
+        this.cache = cache;
+        this.auth = auth;
+        this.callbacks = callbacks;
+    }
+
+    public CompletableFuture<Account> login(String terminalId, int accountId, String pin) {
+        return deliver(executor.submit(() -> auth.authenticate(terminalId, accountId, pin)));
+    }
+
+    /** Current account state; concurrent requests for the same account share one read. */
+    public CompletableFuture<Account> balance(int accountId) {
+        return deliver(coalesce(balanceReads, accountId, () -> cache.getOrLoad(accountId, dao::findById)));
+    }
+
+    public CompletableFuture<List<TransactionRecord>> historyPage(int accountId, TransactionRecord after, int limit) {
+        String key = accountId + ":" + (after == null ? "" : after.getId()) + ":" + limit;
+        return deliver(coalesce(historyReads, key, () -> dao.getTransactionPage(accountId, after, limit)));
+    }
+
+    /** Withdraws and completes with the account as it is after the commit. */
+    public CompletableFuture<Account> withdraw(int accountId, BigDecimal amount) {
+        return deliver(executor.submit(() -> {
+            transactions.withdraw(accountId, amount);
+            return reload(accountId);
+        }));
+    }
+
+    public CompletableFuture<Account> deposit(int accountId, BigDecimal amount) {
+        return deliver(executor.submit(() -> {
+            transactions.deposit(accountId, amount);
+            return reload(accountId);
+        }));
+    }
+
+    /** Transfers and completes with the sender's account as it is after the commit. */
+    public CompletableFuture<Account> transfer(int fromAccountId, int toAccountId, BigDecimal amount) {
+        return deliver(executor.submit(() -> {
+            transactions.transfer(fromAccountId, toAccountId, amount);
+            return reload(fromAccountId);
+        }));
+    }
+
+    // runs on the worker right after the commit; a read that started earlier may hold the old balance,
+    // so it is not joined
+    private Account reload(int accountId) throws DatabaseException {
+        balanceReads.remove(accountId);
+        return cache.getOrLoad(accountId, dao::findById);
+    }
+
+    private <K, T> CompletableFuture<T> coalesce(Map<K, CompletableFuture<T>> inFlight, K key, TransactionExecutor.Task<T> read) {
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        CompletableFuture<T> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) return existing;
+        executor.submit(read).whenComplete((v, ex) -> {
+            inFlight.remove(key, mine);
+            if (ex != null) mine.completeExceptionally(ex);
+            else mine.complete(v);
+        });
+        return mine;
+    }
+
+    private <T> CompletableFuture<T> deliver(CompletableFuture<T> f) {
+        return f.whenCompleteAsync((v, ex) -> { }, callbacks);
+    }
+
+    /** The exception a failed future was completed with, without the CompletionException wrapper. */
+    public static Throwable causeOf(Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    }
+}
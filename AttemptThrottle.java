@@ -0,0 +1,83 @@
+package atm;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Failed-attempt counters, one per key, in a bounded map.
+ * Each entry packs the time of the last attempt (seconds) and the attempt count into one long. Callers reserve an
+ * attempt with {@link #tryAcquire} before checking it and give it back with {@link #release} if it did not fail, so
+ * concurrent attempts can never get past the limit. A key is blocked once it reaches the limit and stays blocked
+ * until the window has passed since its last attempt. When the map is full only expired counters are dropped;
+ * if none are, new keys are refused until some expire, so flooding the map cannot wipe a live counter.
+ */
+public class AttemptThrottle<K> {
+    private static final int COUNT_BITS = 16;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final Map<K, Long> counters = new ConcurrentHashMap<>();
+    private final int maxKeys;
+    private final int maxFailures;
+    private final long windowSeconds;
+    private final LongSupplier clockSeconds;
+
+    public AttemptThrottle(int maxKeys, int maxFailures, long windowSeconds) {
+        this(maxKeys, maxFailures, windowSeconds, () -> System.currentTimeMillis() / 1000);
+    }
+
+    // package-private so tests can move the clock
+    AttemptThrottle(int maxKeys, int maxFailures, long windowSeconds, LongSupplier clockSeconds) {
+        this.maxKeys = Math.max(1, maxKeys);
+        this.maxFailures = maxFailures;
+        this.windowSeconds = windowSeconds;
+        this.clockSeconds = clockSeconds;
+    }
+
+    private boolean expired(long v, long now) {
+        return now - (v >>> COUNT_BITS) >= windowSeconds;
+    }
+
+    public boolean isBlocked(K key) {
+        Long v = counters.get(key);
+        return v != null && (v & COUNT_MASK) >= maxFailures && !expired(v, clockSeconds.getAsLong());
+    }
+
+    /**
+     * Reserves one attempt for {@code key}; it counts as a failure until it is released or the key is reset.
+     * Returns false, reserving nothing, when the key is blocked or the map is full of live counters.
+     */
+    public boolean tryAcquire(K key) {
+        long now = clockSeconds.getAsLong();
+        if (counters.size() >= maxKeys && !counters.containsKey(key)) {
+            // only runs when the map is full, so a flood of distinct keys costs a sweep per attempt at worst
+            counters.values().removeIf(v -> expired(v, now));
+            if (counters.size() >= maxKeys) return false;
+        }
+        boolean[] acquired = new boolean[1];
+        counters.compute(key, (k, v) -> {
+            long count = v == null || expired(v, now) ? 0 : v & COUNT_MASK;
+            if (count >= maxFailures) return v;
+            acquired[0] = true;
+            return (now << COUNT_BITS) | (count + 1);
+        });
+        return acquired[0];
+    }
+
+    /** Gives back an attempt reserved by {@link #tryAcquire} that turned out not to be a failure. */
+    public void release(K key) {
+        counters.computeIfPresent(key, (k, v) -> {
+            long count = v & COUNT_MASK;
+            return count <= 1 ? null : v - 1;
+        });
+    }
+
+    public void reset(K key) {
+        counters.remove(key);
+    }
+
+    public int getFailures(K key) {
+        Long v = counters.get(key);
+        return v == null || expired(v, clockSeconds.getAsLong()) ? 0 : (int) (v & COUNT_MASK);
+    }
+}
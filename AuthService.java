@@ -0,0 +1,163 @@
+package atm;
+
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PIN login for terminals.
+ * Loads the account and its PIN hash with one query, remembers recently verified logins for a short
+ * TTL so repeat logins skip the PIN lookup, and throttles repeated failures per account and per terminal
+ * without going to the database.
+ */
+public class AuthService {
+    private static final class Session {
+        final byte[] pinDigest;
+        final long expiresAt;
+
+        Session(byte[] pinDigest, long expiresAt) {
+            this.pinDigest = pinDigest;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final AccountDAO dao;
+    private final InMemoryCache cache;
+    private final AttemptThrottle<Integer> accountFailures;
+    private final AttemptThrottle<String> terminalFailures;
+    private final int maxSessions;
+    private final long sessionTtlNanos;
+    private final Map<Integer, Session> sessions;
+
+    private final LongAdder sessionHits = new LongAdder();
+    private final LongAdder logins = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final OperationTimer pinChecks = new OperationTimer("auth_pin_check", "PIN verification at login");
+
+    public AuthService(AccountDAO dao, InMemoryCache cache) {
+        this.dao = dao;
+        this.cache = cache;
+        this.accountFailures = new AttemptThrottle<>(DBConfig.AUTH_THROTTLE_MAX_KEYS, DBConfig.AUTH_MAX_FAILURES_PER_ACCOUNT,
+                DBConfig.AUTH_LOCKOUT_SECONDS);
+        this.terminalFailures = new AttemptThrottle<>(DBConfig.AUTH_THROTTLE_MAX_KEYS, DBConfig.AUTH_MAX_FAILURES_PER_TERMINAL,
+                DBConfig.AUTH_LOCKOUT_SECONDS);
+        this.maxSessions = DBConfig.AUTH_SESSION_MAX_ENTRIES;
+        this.sessionTtlNanos = TimeUnit.MILLISECONDS.toNanos(DBConfig.AUTH_SESSION_TTL_MS);
+        this.sessions = new LinkedHashMap<Integer, Session>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Session> eldest) {
+                return size() > AuthService.this.maxSessions;
+            }
+        };
+    }
+
+    /**
+     * Verifies the PIN and returns the account.
+     * Throws AuthenticationException for a wrong PIN, an unknown account or a throttled account/terminal.
+     */
+    public Account authenticate(String terminalId, int accountId, String pin) throws AuthenticationException, DatabaseException {
+        long start = System.nanoTime();
+        try {
+            Account a = verify(terminalId, accountId, pin);
+            pinChecks.success(start);
+            return a;
+        } catch (AuthenticationException e) {
+            pinChecks.record(start, OperationTimer.outcomeOf(e.getReason()));
+            throw e;
+        } catch (DatabaseException e) {
+            pinChecks.failure(start, e);
+            throw e;
+        }
+    }
+
+    private Account verify(String terminalId, int accountId, String pin) throws AuthenticationException, DatabaseException {
+        // reserve the attempt before the PIN check, so concurrent guesses cannot get past the limit
+        if (!accountFailures.tryAcquire(accountId)) throw throttled();
+        if (!terminalFailures.tryAcquire(terminalId)) {
+            accountFailures.release(accountId);
+            throw throttled();
+        }
+        boolean verified = false;
+        boolean accountFailed = false;
+        boolean terminalFailed = false;
+        try {
+            byte[] digest = HashUtil.sha256(pin);
+
+            Session s;
+            synchronized (sessions) {
+                s = sessions.get(accountId);
+            }
+            if (s != null && s.expiresAt - System.nanoTime() > 0 && MessageDigest.isEqual(digest, s.pinDigest)) {
+                Account a = cache.getOrLoad(accountId, dao::findById);
+                if (a != null) {
+                    verified = true;
+                    sessionHits.increment();
+                    logins.increment();
+                    return a;
+                }
+            }
+
+            AccountCredentials creds = dao.findCredentials(accountId);
+            if (creds == null) {
+                terminalFailed = true;
+                failures.increment();
+                throw new AuthenticationException("Account not found", DatabaseException.Reason.NOT_FOUND);
+            }
+            String pinHash = creds.getPinHash();
+            if (pinHash == null || pinHash.isEmpty()) {
+                throw new AuthenticationException("No PIN set for this account on server. Contact admin.");
+            }
+            byte[] expected = HashUtil.fromHex(pinHash);
+            if (expected == null || !MessageDigest.isEqual(digest, expected)) {
+                accountFailed = true;
+                terminalFailed = true;
+                failures.increment();
+                synchronized (sessions) {
+                    sessions.remove(accountId);
+                }
+                throw new AuthenticationException("Invalid PIN");
+            }
+
+            verified = true;
+            synchronized (sessions) {
+                sessions.put(accountId, new Session(expected, System.nanoTime() + sessionTtlNanos));
+            }
+            // not cached here: a concurrent update could be overwritten with this older read, so the cache
+            // fills through getOrLoad on the next lookup
+            logins.increment();
+            return creds.getAccount();
+        } finally {
+            // a reservation that was not a failed guess is given back; a correct PIN clears the account's count
+            if (verified) accountFailures.reset(accountId);
+            else if (!accountFailed) accountFailures.release(accountId);
+            if (!terminalFailed) terminalFailures.release(terminalId);
+        }
+    }
+
+    private AuthenticationException throttled() {
+        throttled.increment();
+        return new AuthenticationException("Too many failed attempts, try again later");
+    }
+
+    // forget a verified login, e.g. after a PIN change
+    public void invalidate(int accountId) {
+        synchronized (sessions) {
+            sessions.remove(accountId);
+        }
+    }
+
+    /** Adds PIN check latency and login counts to {@code registry}. */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.register(pinChecks);
+        registry.gauge("auth_session_hits_total", "Logins verified from the session cache", this::getSessionHitCount);
+        registry.gauge("auth_throttled_total", "Logins refused by failure throttling", this::getThrottledCount);
+    }
+
+    public long getLoginCount() { return logins.sum(); }
+    public long getSessionHitCount() { return sessionHits.sum(); }
+    public long getFailureCount() { return failures.sum(); }
+    public long getThrottledCount() { return throttled.sum(); }
+}
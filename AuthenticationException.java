@@ -0,0 +1,16 @@
+package atm;
+
+public class AuthenticationException extends Exception {
+    private final DatabaseException.Reason reason;
+
+    public AuthenticationException(String message) {
+        this(message, DatabaseException.Reason.INVALID);
+    }
+
+    public AuthenticationException(String message, DatabaseException.Reason reason) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public DatabaseException.Reason getReason() { return reason; }
+}
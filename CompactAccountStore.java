@@ -0,0 +1,322 @@
+package atm;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Account working set kept in primitive arrays instead of Account objects.
+ * Balances are long cents in one AtomicLongArray and change by CAS, so no locks are taken; the type is a
+ * byte per account and the limits are per-type constants. Accounts are found through an open-addressing
+ * id-to-slot table sized for a fixed capacity, and handed out as small {@link Account} views that read and
+ * write the arrays. Registered as an {@link AccountChangeListener}, it marks an account stale when a change
+ * to it commits elsewhere, and the next {@link #getOrLoad} reloads it.
+ * Each invalidation bumps the slot's generation and writes a stale marker carrying it, so a load that started
+ * before the change cannot install its older balance: it is installed by a CAS from the marker seen before loading.
+ * <p>
+ * Experimental, used only by the footprint benchmark: the application's cache path is still {@link InMemoryCache}.
+ * Capacity is fixed and nothing is ever evicted; once it is full, {@link #getOrLoad} returns new accounts without
+ * storing them and {@link #put} throws IllegalStateException.
+ */
+public class CompactAccountStore implements AccountChangeListener {
+    public static final byte SAVINGS = 0;
+    public static final byte CURRENT = 1;
+
+    private static final long SAVINGS_FLOOR = toMinorUnchecked(SavingsAccount.MINIMUM_BALANCE);
+    private static final long CURRENT_FLOOR = -toMinorUnchecked(CurrentAccount.OVERDRAFT_LIMIT);
+    // balance of a slot whose account has not been loaded; an invalidated slot holds STALE + its generation
+    private static final long STALE = Long.MIN_VALUE;
+    private static final long STALE_LIMIT = STALE + (1L << 32);
+    private static final int EMPTY = 0; // account ids start at 1
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicIntegerArray keys; // account id, or EMPTY
+    private final int[] slotOf;            // written before its key is published
+    private final AtomicLongArray balances;
+    private final AtomicIntegerArray generations;
+    private final byte[] types;
+    private final String[] owners;
+    private int size;
+    // loads of accounts without a slot yet; an invalidation removes the entry so the load is not installed
+    private final Map<Integer, Object> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder casRetries = new LongAdder();
+
+    public CompactAccountStore() {
+        this(DBConfig.COMPACT_STORE_CAPACITY);
+    }
+
+    public CompactAccountStore(int capacity) {
+        this.capacity = capacity;
+        int table = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1; // load factor at most 0.5
+        this.mask = table - 1;
+        this.keys = new AtomicIntegerArray(table);
+        this.slotOf = new int[table];
+        this.balances = new AtomicLongArray(capacity);
+        this.generations = new AtomicIntegerArray(capacity);
+        this.types = new byte[capacity];
+        this.owners = new String[capacity];
+    }
+
+    private static long toMinorUnchecked(BigDecimal amount) {
+        try {
+            return MinorUnits.toMinor(amount);
+        } catch (DatabaseException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isStale(long balance) {
+        return balance < STALE_LIMIT;
+    }
+
+    private static long floor(byte type) {
+        return type == SAVINGS ? SAVINGS_FLOOR : CURRENT_FLOOR;
+    }
+
+    private int indexOf(int accountId) {
+        int h = accountId * 0x9E3779B9; // spreads sequential ids across the table
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    // slot of the account, or -1; lock-free
+    private int find(int accountId) {
+        for (int i = indexOf(accountId); ; i = (i + 1) & mask) {
+            int k = keys.get(i);
+            if (k == accountId) return slotOf[i];
+            if (k == EMPTY) return -1;
+        }
+    }
+
+    /**
+     * Stores an account loaded from the database if the store has no current balance for it. A loaded balance
+     * never replaces a current one, which may already include updates made here.
+     */
+    public void put(Account a) throws DatabaseException {
+        long minor = MinorUnits.toMinor(a.getBalance());
+        int slot = find(a.getAccountId());
+        if (slot < 0) slot = insert(a);
+        long seen = balances.get(slot);
+        if (isStale(seen)) balances.compareAndSet(slot, seen, minor);
+    }
+
+    private synchronized int insert(Account a) {
+        int id = a.getAccountId();
+        if (id == EMPTY) throw new IllegalArgumentException("Account id " + EMPTY + " cannot be stored");
+        int i = indexOf(id);
+        for (; keys.get(i) != EMPTY; i = (i + 1) & mask) {
+            if (keys.get(i) == id) return slotOf[i];
+        }
+        if (size == capacity) throw new IllegalStateException("Compact account store is full (" + capacity + ")");
+        int slot = size++;
+        types[slot] = a instanceof SavingsAccount ? SAVINGS : CURRENT;
+        owners[slot] = a.getOwnerName();
+        balances.set(slot, STALE);
+        slotOf[i] = slot;
+        keys.set(i, id); // publishes the slot, type and owner
+        return slot;
+    }
+
+    /** View of the account, or null when it is not loaded or has been invalidated. */
+    public Account get(int accountId) {
+        int slot = find(accountId);
+        long minor = slot < 0 ? STALE : balances.get(slot);
+        if (!isStale(minor)) {
+            hits.increment();
+            return view(accountId, slot, minor);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * View of the account, loading it when it is not loaded or has been invalidated; null if it does not exist.
+     * If the account changes while it is loading, the loaded balance is returned but not stored.
+     */
+    public Account getOrLoad(int accountId, InMemoryCache.Loader loader) throws DatabaseException {
+        int slot = find(accountId);
+        if (slot >= 0) {
+            long seen = balances.get(slot);
+            if (!isStale(seen)) {
+                hits.increment();
+                return view(accountId, slot, seen);
+            }
+            misses.increment();
+            Account loaded = loader.load(accountId);
+            if (loaded == null) return null;
+            long minor = MinorUnits.toMinor(loaded.getBalance());
+            balances.compareAndSet(slot, seen, minor);
+            return view(accountId, slot, minor);
+        }
+        misses.increment();
+        Object token = new Object();
+        loading.put(accountId, token);
+        Account loaded;
+        long minor;
+        try {
+            loaded = loader.load(accountId);
+            minor = loaded == null ? STALE : MinorUnits.toMinor(loaded.getBalance());
+        } catch (DatabaseException | RuntimeException e) {
+            loading.remove(accountId, token);
+            throw e;
+        }
+        if (loaded == null) {
+            loading.remove(accountId, token);
+            return null;
+        }
+        synchronized (this) {
+            if (!loading.remove(accountId, token)) return loaded;
+            if (size == capacity && find(accountId) < 0) return loaded;
+            slot = insert(loaded);
+            balances.compareAndSet(slot, STALE, minor);
+        }
+        return view(accountId, slot, minor);
+    }
+
+    private Account view(int accountId, int slot, long minor) {
+        return types[slot] == SAVINGS ? new SavingsView(this, accountId, slot, minor) : new CurrentView(this, accountId, slot, minor);
+    }
+
+    @Override
+    public void accountChanged(int accountId) {
+        int slot = find(accountId);
+        if (slot >= 0) {
+            invalidate(slot);
+            return;
+        }
+        // insert publishes new slots under this lock, so the change is either seen here or by the loader
+        synchronized (this) {
+            slot = find(accountId);
+            if (slot >= 0) invalidate(slot);
+            else loading.remove(accountId);
+        }
+    }
+
+    private void invalidate(int slot) {
+        balances.set(slot, STALE + (generations.incrementAndGet(slot) & 0xFFFFFFFFL));
+    }
+
+    /** Balance in cents; STALE ({@code Long.MIN_VALUE}) when unknown. */
+    public long balanceMinor(int accountId) {
+        int slot = find(accountId);
+        long minor = slot < 0 ? STALE : balances.get(slot);
+        return isStale(minor) ? STALE : minor;
+    }
+
+    /** Debits if the per-type limit allows it; false when it does not or the account is not loaded. */
+    public boolean withdraw(int accountId, long amountMinor) {
+        int slot = find(accountId);
+        return slot >= 0 && withdrawSlot(slot, amountMinor);
+    }
+
+    public boolean deposit(int accountId, long amountMinor) {
+        int slot = find(accountId);
+        return slot >= 0 && depositSlot(slot, amountMinor);
+    }
+
+    private boolean withdrawSlot(int slot, long amountMinor) {
+        long floor = floor(types[slot]);
+        for (;;) {
+            long cur = balances.get(slot);
+            if (isStale(cur) || cur - amountMinor < floor) return false;
+            if (balances.compareAndSet(slot, cur, cur - amountMinor)) return true;
+            casRetries.increment();
+        }
+    }
+
+    private boolean depositSlot(int slot, long amountMinor) {
+        for (;;) {
+            long cur = balances.get(slot);
+            if (isStale(cur)) return false;
+            if (balances.compareAndSet(slot, cur, cur + amountMinor)) return true;
+            casRetries.increment();
+        }
+    }
+
+    public synchronized int size() { return size; }
+    public int getCapacity() { return capacity; }
+    public long getHitCount() { return hits.sum(); }
+    public long getMissCount() { return misses.sum(); }
+    public long getCasRetryCount() { return casRetries.sum(); }
+
+    // The views keep the SavingsAccount/CurrentAccount types so instanceof checks still work; the
+    // balance field inherited from Account is unused. A view reads the live balance, or the one it was
+    // handed out with once the account has been invalidated.
+
+    private static BigDecimal balanceOf(CompactAccountStore store, int slot, long snapshot) {
+        long minor = store.balances.get(slot);
+        return MinorUnits.toDecimal(isStale(minor) ? snapshot : minor);
+    }
+
+    private static long amountOf(BigDecimal amount) {
+        if (amount.signum() <= 0) throw new IllegalArgumentException("Amount must be > 0");
+        try {
+            return MinorUnits.toMinor(amount);
+        } catch (DatabaseException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    private static boolean canWithdraw(CompactAccountStore store, int slot, BigDecimal amount) {
+        long cur = store.balances.get(slot);
+        return !isStale(cur) && cur - amountOf(amount) >= floor(store.types[slot]);
+    }
+
+    private static void withdraw(CompactAccountStore store, int slot, BigDecimal amount) {
+        if (!store.withdrawSlot(slot, amountOf(amount))) {
+            throw new IllegalArgumentException("Insufficient funds or rules block withdrawal");
+        }
+    }
+
+    private static void deposit(CompactAccountStore store, int slot, BigDecimal amount) {
+        if (!store.depositSlot(slot, amountOf(amount))) throw new IllegalArgumentException("Account is not loaded");
+    }
+
+    private static String describe(Account a) {
+        return "Account{" + "accountId=" + a.getAccountId() + ", ownerName='" + a.getOwnerName() + '\'' + ", balance=" + a.getBalance() + '}';
+    }
+
+    private static final class SavingsView extends SavingsAccount {
+        private final CompactAccountStore store;
+        private final int slot;
+        private final long snapshot;
+
+        SavingsView(CompactAccountStore store, int accountId, int slot, long snapshot) {
+            super(accountId, store.owners[slot], null);
+            this.store = store;
+            this.slot = slot;
+            this.snapshot = snapshot;
+        }
+
+        @Override public BigDecimal getBalance() { return balanceOf(store, slot, snapshot); }
+        @Override public boolean canWithdraw(BigDecimal amount) { return CompactAccountStore.canWithdraw(store, slot, amount); }
+        @Override public void withdraw(BigDecimal amount) { CompactAccountStore.withdraw(store, slot, amount); }
+        @Override public void deposit(BigDecimal amount) { CompactAccountStore.deposit(store, slot, amount); }
+        @Override public String toString() { return describe(this); }
+    }
+
+    private static final class CurrentView extends CurrentAccount {
+        private final CompactAccountStore store;
+        private final int slot;
+        private final long snapshot;
+
+        CurrentView(CompactAccountStore store, int accountId, int slot, long snapshot) {
+            super(accountId, store.owners[slot], null);
+            this.store = store;
+            this.slot = slot;
+            this.snapshot = snapshot;
+        }
+
+        @Override public BigDecimal getBalance() { return balanceOf(store, slot, snapshot); }
+        @Override public boolean canWithdraw(BigDecimal amount) { return CompactAccountStore.canWithdraw(store, slot, amount); }
+        @Override public void withdraw(BigDecimal amount) { CompactAccountStore.withdraw(store, slot, amount); }
+        @Override public void deposit(BigDecimal amount) { CompactAccountStore.deposit(store, slot, amount); }
+        @Override public String toString() { return describe(this); }
+    }
+}
@@ -0,0 +1,337 @@
+package atm;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of reusable JDBC connections.
+ * Idle connections are reused LIFO, validated on borrow and evicted after the idle timeout, and housekeeping
+ * opens new ones whenever fewer than {@code minIdle} are left; connections held longer than the leak threshold are reported with the stack that borrowed them.
+ * Each pooled connection keeps its own {@link StatementCache} across borrows.
+ */
+public class ConnectionPool implements ConnectionProvider, AutoCloseable {
+    // connections returned this recently are handed out again without a validation ping
+    private static final long VALIDATION_BYPASS_MS = 500;
+
+    private final String url;
+    private final String user;
+    private final String pass;
+    private final int maxSize;
+    private final int minIdle;
+    private final long idleTimeoutMs;
+    private final long borrowTimeoutMs;
+    private final long leakThresholdMs;
+
+    private final Semaphore permits;
+    private final Deque<PooledEntry> idle = new ConcurrentLinkedDeque<>();
+    private final Set<Lease> leased = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger total = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LatencyHistogram acquireTime = new LatencyHistogram();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final LongAdder statementEvictions = new LongAdder();
+
+    public ConnectionPool(String url, String user, String pass) {
+        this(url, user, pass, DBConfig.POOL_MAX_SIZE, DBConfig.POOL_MIN_IDLE, DBConfig.POOL_IDLE_TIMEOUT_MS,
+                DBConfig.POOL_BORROW_TIMEOUT_MS, DBConfig.POOL_LEAK_THRESHOLD_MS);
+    }
+
+    public ConnectionPool(String url, String user, String pass, int maxSize, int minIdle,
+                          long idleTimeoutMs, long borrowTimeoutMs, long leakThresholdMs) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be > 0");
+        this.url = url;
+        this.user = user;
+        this.pass = pass;
+        this.maxSize = maxSize;
+        this.minIdle = Math.min(minIdle, maxSize);
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.leakThresholdMs = leakThresholdMs;
+        this.permits = new Semaphore(maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "atm-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(idleTimeoutMs, leakThresholdMs > 0 ? leakThresholdMs : idleTimeoutMs) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        recordWait(System.nanoTime() - start);
+        if (!acquired) {
+            timeouts.increment();
+            throw new SQLTimeoutException("Timed out after " + borrowTimeoutMs + " ms waiting for a connection (active="
+                    + getActiveCount() + ", max=" + maxSize + ")");
+        }
+        try {
+            PooledEntry entry = takeIdle();
+            if (entry == null) entry = open();
+            borrows.increment();
+            Lease lease = new Lease(entry);
+            leased.add(lease);
+            return lease.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens connections until {@code minIdle} are idle, so the first borrowers skip the connect handshake.
+     * Each open holds a borrow permit, so warming up never pushes the pool past {@code maxSize}.
+     */
+    public void warmUp() throws SQLException {
+        while (!closed && idle.size() < minIdle && permits.tryAcquire()) {
+            try {
+                idle.offerLast(open());
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private PooledEntry takeIdle() {
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - entry.lastUsed < VALIDATION_BYPASS_MS || isValid(entry)) return entry;
+            validationFailures.increment();
+            discard(entry);
+        }
+        return null;
+    }
+
+    private boolean isValid(PooledEntry entry) {
+        try {
+            return entry.raw.isValid(DBConfig.POOL_VALIDATION_TIMEOUT_S);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledEntry open() throws SQLException {
+        Connection raw = DriverManager.getConnection(url, user, pass);
+        total.incrementAndGet();
+        created.increment();
+        StatementCache statements = new StatementCache(DBConfig.STATEMENT_CACHE_SIZE,
+                statementHits, statementMisses, statementEvictions);
+        return new PooledEntry(raw, statements);
+    }
+
+    private void discard(PooledEntry entry) {
+        total.decrementAndGet();
+        entry.statements.clear();
+        try {
+            entry.raw.close();
+        } catch (SQLException ignored) {
+            // already unusable
+        }
+    }
+
+    private void release(Lease lease) {
+        synchronized (lease) {
+            if (lease.returned) return;
+            lease.returned = true;
+        }
+        leased.remove(lease);
+        PooledEntry entry = lease.entry;
+        entry.statements.releaseAll();
+        try {
+            // never hand out a connection with half a transaction on it
+            if (!entry.raw.getAutoCommit()) {
+                entry.raw.rollback();
+                entry.raw.setAutoCommit(true);
+            }
+            entry.lastUsed = System.currentTimeMillis();
+            if (closed) discard(entry);
+            else idle.offerFirst(entry);
+        } catch (SQLException e) {
+            discard(entry);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void recordWait(long nanos) {
+        waitNanos.add(nanos);
+        acquireTime.record(nanos);
+        long max;
+        while (nanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, nanos)) {
+            // retry
+        }
+    }
+
+    // package-private so tests can run a pass without waiting for the schedule
+    void housekeep() {
+        long now = System.currentTimeMillis();
+        for (PooledEntry entry : idle) {
+            if (idle.size() <= minIdle) break;
+            if (now - entry.lastUsed > idleTimeoutMs && idle.removeFirstOccurrence(entry)) {
+                evicted.increment();
+                discard(entry);
+            }
+        }
+        // top back up after evictions and failed validations; a throw here would cancel the schedule
+        try {
+            warmUp();
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Could not refill connection pool to " + minIdle + " idle: " + e.getMessage());
+        }
+        if (leakThresholdMs <= 0) return;
+        for (Lease lease : leased) {
+            if (!lease.leakReported && now - lease.borrowedAt > leakThresholdMs) {
+                lease.leakReported = true;
+                leaks.increment();
+                System.err.println("Possible connection leak: connection held for " + (now - lease.borrowedAt)
+                        + " ms by thread " + lease.threadName);
+                lease.origin.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) discard(entry);
+    }
+
+    public int getMaxSize() { return maxSize; }
+    public int getActiveCount() { return leased.size(); }
+    public int getIdleCount() { return idle.size(); }
+    public int getTotalCount() { return total.get(); }
+    public int getWaitingThreads() { return permits.getQueueLength(); }
+    public long getBorrowCount() { return borrows.sum(); }
+    public long getCreatedCount() { return created.sum(); }
+    public long getEvictedCount() { return evicted.sum(); }
+    public long getValidationFailureCount() { return validationFailures.sum(); }
+    public long getTimeoutCount() { return timeouts.sum(); }
+    public long getLeakCount() { return leaks.sum(); }
+    public long getStatementCacheHits() { return statementHits.sum(); }
+    public long getStatementCacheMisses() { return statementMisses.sum(); }
+    public long getStatementCacheEvictions() { return statementEvictions.sum(); }
+    public long getTotalWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(waitNanos.sum()); }
+    public long getMaxWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()); }
+
+    public LatencyHistogram getAcquireTimeHistogram() { return acquireTime; }
+
+    /** Adds connection acquire time and pool occupancy to {@code registry}. */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.histogram("pool_acquire", "Time to borrow a pooled connection", acquireTime);
+        registry.gauge("pool_active_connections", "Connections currently borrowed", this::getActiveCount);
+        registry.gauge("pool_idle_connections", "Idle pooled connections", this::getIdleCount);
+        registry.gauge("pool_waiting_threads", "Threads waiting for a connection", this::getWaitingThreads);
+        registry.gauge("pool_timeouts_total", "Borrows that timed out", this::getTimeoutCount);
+        registry.gauge("pool_leaks_total", "Connections reported as leaked", this::getLeakCount);
+        registry.gauge("statement_cache_hits_total", "Prepared statements reused from the cache", this::getStatementCacheHits);
+        registry.gauge("statement_cache_misses_total", "Prepared statements that had to be prepared", this::getStatementCacheMisses);
+    }
+
+    public double getAverageWaitMillis() {
+        long n = borrows.sum() + timeouts.sum();
+        return n == 0 ? 0 : waitNanos.sum() / 1_000_000.0 / n;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{active=" + getActiveCount() + ", idle=" + getIdleCount() + ", total=" + getTotalCount()
+                + ", max=" + maxSize + ", waiting=" + getWaitingThreads() + ", avgWaitMs=" + getAverageWaitMillis()
+                + ", timeouts=" + getTimeoutCount() + ", leaks=" + getLeakCount() + '}';
+    }
+
+    private static final class PooledEntry {
+        final Connection raw;
+        final StatementCache statements;
+        volatile long lastUsed = System.currentTimeMillis();
+
+        PooledEntry(Connection raw, StatementCache statements) {
+            this.raw = raw;
+            this.statements = statements;
+        }
+    }
+
+    // One borrow of a pooled connection; close() on the proxy returns it to the pool.
+    private final class Lease implements InvocationHandler {
+        final PooledEntry entry;
+        final long borrowedAt = System.currentTimeMillis();
+        final String threadName = Thread.currentThread().getName();
+        final Throwable origin;
+        final Connection proxy;
+        boolean returned;
+        volatile boolean leakReported;
+
+        Lease(PooledEntry entry) {
+            this.entry = entry;
+            this.origin = leakThresholdMs > 0 ? new Exception("Connection borrowed here") : null;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    release(this);
+                    return null;
+                case "isClosed":
+                    return returned || entry.raw.isClosed();
+                case "equals":
+                    return p == args[0];
+                case "hashCode":
+                    return System.identityHashCode(p);
+                case "toString":
+                    return "Pooled" + entry.raw;
+                default:
+                    break;
+            }
+            if (returned) throw new SQLException("Connection has already been returned to the pool");
+            if ("prepareStatement".equals(method.getName()) && args.length == 1) {
+                return entry.statements.prepare(entry.raw, (String) args[0]);
+            }
+            try {
+                return method.invoke(entry.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
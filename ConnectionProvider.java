@@ -0,0 +1,12 @@
+package atm;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Source of JDBC connections for the DAO layer.
+ * Callers must close the returned connection, which hands it back to the provider.
+ */
+public interface ConnectionProvider {
+    Connection getConnection() throws SQLException;
+}
@@ -3,7 +3,7 @@ package atm;
 import java.math.BigDecimal;
 
 public class CurrentAccount extends Account {
-    private BigDecimal overdraftLimit = BigDecimal.valueOf(1000); // allowed negative
+    public static final BigDecimal OVERDRAFT_LIMIT = BigDecimal.valueOf(1000); // allowed negative
 
     public CurrentAccount(int accountId, String ownerName, BigDecimal balance) {
         super(accountId, ownerName, balance);
@@ -11,6 +11,6 @@ public class CurrentAccount extends Account {
 
     @Override
     public boolean canWithdraw(BigDecimal amount) {
-        return balance.subtract(amount).compareTo(overdraftLimit.negate()) >= 0;
+        return balance.subtract(amount).compareTo(OVERDRAFT_LIMIT.negate()) >= 0;
     }
 }
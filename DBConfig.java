@@ -2,7 +2,96 @@ package atm;
 
 public class DBConfig {
     // Update these values to match your DB
-    public static final String URL = "jdbc:mysql://localhost:3306/atmdb?useSSL=false&serverTimezone=UTC";
+    public static final String URL = "jdbc:mysql://localhost:3306/atmdb?useSSL=false&serverTimezone=UTC&useServerPrepStmts=true&rewriteBatchedStatements=true&useCursorFetch=true";
     public static final String USER = "root";
     public static final String PASS = "password";
+
+    // Loaded in the background at startup; JDBC 4 auto-loading still applies if it is missing
+    public static final String JDBC_DRIVER = "com.mysql.cj.jdbc.Driver";
+
+    // Connection pool sizing
+    public static final int POOL_MAX_SIZE = 10;
+    public static final int POOL_MIN_IDLE = 2;
+    public static final long POOL_IDLE_TIMEOUT_MS = 10 * 60 * 1000L;
+    public static final long POOL_BORROW_TIMEOUT_MS = 5_000L;
+    public static final long POOL_LEAK_THRESHOLD_MS = 30_000L; // 0 disables leak detection
+    public static final int POOL_VALIDATION_TIMEOUT_S = 2;
+
+    // Prepared statements cached per pooled connection (0 disables the cache)
+    public static final int STATEMENT_CACHE_SIZE = 64;
+
+    // How AccountDAO applies withdrawals and deposits
+    public static final AccountDAO.ExecutionMode EXECUTION_MODE = AccountDAO.ExecutionMode.CONDITIONAL_UPDATE;
+
+    // GROUP_COMMIT mode: flush when this many operations are queued or the oldest has waited this long
+    public static final int GROUP_COMMIT_MAX_BATCH = 64;
+    public static final long GROUP_COMMIT_MAX_DELAY_MS = 2;
+
+    // Background execution of withdraw/deposit/transfer requests
+    public static final TransactionExecutor.Backend EXECUTOR_BACKEND = TransactionExecutor.Backend.PLATFORM;
+    public static final int EXECUTOR_CONCURRENCY = POOL_MAX_SIZE;
+    public static final int EXECUTOR_QUEUE_CAPACITY = 256;
+    public static final TransactionExecutor.RejectionPolicy EXECUTOR_REJECTION_POLICY = TransactionExecutor.RejectionPolicy.ABORT;
+    public static final long EXECUTOR_SHUTDOWN_TIMEOUT_MS = 10_000L;
+
+    // Account cache bounds
+    public static final int CACHE_MAX_ENTRIES = 10_000;
+    public static final long CACHE_TTL_MS = 30_000L;
+
+    // Transaction history paging
+    public static final int HISTORY_PAGE_SIZE = 50;
+    public static final int HISTORY_FETCH_SIZE = 500;
+
+    // Login: verified-session cache and brute-force throttling
+    public static final int AUTH_SESSION_MAX_ENTRIES = 10_000;
+    public static final long AUTH_SESSION_TTL_MS = 60_000L;
+    public static final int AUTH_THROTTLE_MAX_KEYS = 65_536;
+    public static final int AUTH_MAX_FAILURES_PER_ACCOUNT = 5;
+    public static final int AUTH_MAX_FAILURES_PER_TERMINAL = 20;
+    public static final long AUTH_LOCKOUT_SECONDS = 300L;
+
+    // Transfers aborted by a deadlock or lock-wait timeout are retried with jittered backoff
+    public static final int TRANSFER_MAX_ATTEMPTS = 5;
+    public static final long TRANSFER_BACKOFF_BASE_MS = 5L;
+    public static final long TRANSFER_BACKOFF_MAX_MS = 200L;
+
+    // transferBatch commits this many instructions per transaction
+    public static final int BATCH_CHUNK_SIZE = 1000;
+
+    // In-memory sharded ledger backend
+    public static final int LEDGER_PARTITIONS = Runtime.getRuntime().availableProcessors();
+
+    // Local transaction journal: segment files, fsync policy and replay into the database
+    public static final String JOURNAL_DIR = "atm-journal";
+    public static final int JOURNAL_SEGMENT_BYTES = 16 * 1024 * 1024;
+    public static final TransactionJournal.FsyncPolicy JOURNAL_FSYNC_POLICY = TransactionJournal.FsyncPolicy.INTERVAL;
+    public static final long JOURNAL_FSYNC_INTERVAL_MS = 10L;
+    public static final int JOURNAL_REPLAY_BATCH = 500;
+    public static final long JOURNAL_REPLAY_POLL_MS = 5L;
+    public static final long JOURNAL_REPLAY_MAX_BACKOFF_MS = 5_000L;
+    public static final long JOURNAL_SHUTDOWN_TIMEOUT_MS = 30_000L;
+
+    // Experimental primitive-backed account store (benchmarks only): accounts it can hold, allocated up front
+    public static final int COMPACT_STORE_CAPACITY = 100_000;
+
+    // In-process account lock stripes used by AccountDAO (rounded up to a power of two)
+    public static final int LOCK_STRIPES = 1024;
+
+    // Prometheus text endpoint on 127.0.0.1 (0 disables it; JMX is always registered)
+    public static final int METRICS_HTTP_PORT = 9404;
+
+    // Read replicas for read-only DAO queries (empty routes every read to URL); an account is read from
+    // the primary for READ_YOUR_WRITES_PIN_MS after each of its commits
+    public static final String[] REPLICA_URLS = {};
+    public static final ReplicaRouter.Policy REPLICA_POLICY = ReplicaRouter.Policy.ROUND_ROBIN;
+    public static final long READ_YOUR_WRITES_PIN_MS = 2_000L;
+    public static final long REPLICA_HEALTH_CHECK_MS = 5_000L;
+
+    // Startup: hottest accounts loaded into the cache before the terminal takes input, from the snapshot saved
+    // at shutdown or else the busiest accounts of the last WARMUP_RECENT_DAYS days
+    public static final String CACHE_SNAPSHOT_FILE = "atm-cache.snapshot";
+    public static final int WARMUP_ACCOUNTS = 1_000;
+    public static final int WARMUP_RECENT_DAYS = 7;
+    public static final int WARMUP_THREADS = 4;
+    public static final long STARTUP_MAX_WAIT_MS = 5_000L;
 }
@@ -0,0 +1,49 @@
+package atm;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * One row of account_daily_summary: an account's activity on one day and its balance after the day's last commit.
+ */
+public class DailySummary {
+    private final int accountId;
+    private final LocalDate date;
+    private final int transactionCount;
+    private final int debitCount;
+    private final int creditCount;
+    private final BigDecimal debitTotal;
+    private final BigDecimal creditTotal;
+    private final BigDecimal closingBalance;
+
+    public DailySummary(int accountId, LocalDate date, int transactionCount, int debitCount, int creditCount,
+                        BigDecimal debitTotal, BigDecimal creditTotal, BigDecimal closingBalance) {
+        this.accountId = accountId;
+        this.date = date;
+        this.transactionCount = transactionCount;
+        this.debitCount = debitCount;
+        this.creditCount = creditCount;
+        this.debitTotal = debitTotal;
+        this.creditTotal = creditTotal;
+        this.closingBalance = closingBalance;
+    }
+
+    public int getAccountId() { return accountId; }
+    public LocalDate getDate() { return date; }
+    public int getTransactionCount() { return transactionCount; }
+    public int getDebitCount() { return debitCount; }
+    public int getCreditCount() { return creditCount; }
+    public BigDecimal getDebitTotal() { return debitTotal; }
+    public BigDecimal getCreditTotal() { return creditTotal; }
+    public BigDecimal getClosingBalance() { return closingBalance; }
+
+    /** Balance before the day's first commit. */
+    public BigDecimal getOpeningBalance() {
+        return closingBalance.subtract(creditTotal).add(debitTotal);
+    }
+
+    @Override
+    public String toString() {
+        return date + " " + transactionCount + " txns, -" + debitTotal + " +" + creditTotal + ", closing " + closingBalance;
+    }
+}
@@ -1,7 +1,20 @@
 package atm;
 
+import java.sql.SQLException;
+
 public class DatabaseException extends Exception {
+    public enum Reason { NOT_FOUND, INSUFFICIENT_FUNDS, INVALID, SQL_ERROR, OTHER }
+
+    private final Reason reason;
+
     public DatabaseException(String message, Throwable cause) {
+        this(message, cause, cause instanceof SQLException ? Reason.SQL_ERROR : Reason.OTHER);
+    }
+
+    public DatabaseException(String message, Throwable cause, Reason reason) {
         super(message, cause);
+        this.reason = reason;
     }
+
+    public Reason getReason() { return reason; }
 }
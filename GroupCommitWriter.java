@@ -0,0 +1,208 @@
+package atm;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Group-commit stage for balance changes and their ledger rows.
+ * Callers enqueue operations; a single writer thread applies a batch of them in one database
+ * transaction, writes all of their ledger rows through one {@link RowWriter} call and commits once, so each
+ * balance change still commits atomically with its ledger rows.
+ * The batch first locks every account it touches in ascending id order, like the other multi-row paths, and
+ * runs through the {@link TransferEngine} so deadlocks and lock-wait timeouts are retried. If the batch still
+ * fails, its operations are re-run one per transaction so only the one that cannot commit fails.
+ * Every submitted operation completes: once {@link #close()} or a dying writer thread stops the writer, queued and
+ * new operations fail instead of waiting.
+ */
+public class GroupCommitWriter implements AutoCloseable {
+    /**
+     * Applies one balance change on the batch connection and returns the ledger rows it produced.
+     * Throwing DatabaseException rejects only this operation and must leave no changes behind;
+     * an SQLException aborts the whole batch.
+     */
+    public interface Operation {
+        List<LedgerEntry> apply(Connection conn) throws SQLException, DatabaseException;
+    }
+
+    /** Writes the ledger rows of every applied operation in the batch, on the batch connection. */
+    public interface RowWriter {
+        void write(Connection conn, List<LedgerEntry> rows) throws SQLException;
+    }
+
+    /** Row-locks the given accounts, in the iteration order of {@code sortedIds}. */
+    public interface RowLocker {
+        void lock(Connection conn, SortedSet<Integer> sortedIds) throws SQLException;
+    }
+
+    private static final class Pending {
+        final Operation op;
+        final int[] accountIds;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        // outcome of the latest attempt; only reported once that attempt commits
+        DatabaseException rejection;
+
+        Pending(Operation op, int[] accountIds) {
+            this.op = op;
+            this.accountIds = accountIds;
+        }
+    }
+
+    private final TransferEngine engine;
+    private final RowLocker rowLocker;
+    private final RowWriter rowWriter;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    // held to enqueue and to set closed, so nothing is queued once the writer may have stopped draining
+    private final Object enqueueLock = new Object();
+    private volatile boolean closed;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+
+    public GroupCommitWriter(TransferEngine engine, RowLocker rowLocker, RowWriter rowWriter, int maxBatch, long maxDelayMs) {
+        this.engine = engine;
+        this.rowLocker = rowLocker;
+        this.rowWriter = rowWriter;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.writer = new Thread(this::run, "atm-group-commit");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /** Queues {@code op}, which may only change the balances of {@code accountIds}. */
+    public CompletableFuture<Void> submit(Operation op, int... accountIds) {
+        Pending p = new Pending(op, accountIds);
+        synchronized (enqueueLock) {
+            if (!closed) {
+                queue.add(p);
+                return p.result;
+            }
+        }
+        p.result.completeExceptionally(new DatabaseException("Group commit writer is closed", null));
+        return p.result;
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        try {
+            while (!closed || !queue.isEmpty()) {
+                try {
+                    Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) continue;
+                    batch.add(first);
+                    // size or time trigger, whichever comes first
+                    long deadline = System.nanoTime() + maxDelayNanos;
+                    while (batch.size() < maxBatch) {
+                        long left = deadline - System.nanoTime();
+                        Pending next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : queue.poll();
+                        if (next == null) break;
+                        batch.add(next);
+                    }
+                } catch (InterruptedException e) {
+                    // keep draining; close() ends the loop once the queue is empty
+                }
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                    batch.clear();
+                }
+            }
+        } catch (Throwable t) {
+            // nothing is left to apply the queue: stop taking work and fail whatever is waiting
+            System.err.println("Group commit writer stopped: " + t);
+            stop();
+            DatabaseException failure = new DatabaseException("Group commit writer stopped", t);
+            for (Pending p : batch) p.result.completeExceptionally(failure);
+            failQueued(failure);
+            throw t;
+        }
+    }
+
+    private void stop() {
+        synchronized (enqueueLock) {
+            closed = true;
+        }
+    }
+
+    private void failQueued(DatabaseException failure) {
+        Pending p;
+        while ((p = queue.poll()) != null) p.result.completeExceptionally(failure);
+    }
+
+    private void flush(List<Pending> batch) {
+        try {
+            engine.execute(conn -> apply(conn, batch));
+        } catch (DatabaseException | RuntimeException e) {
+            failedBatches.increment();
+            if (batch.size() > 1) {
+                for (Pending p : batch) flush(Collections.singletonList(p));
+                return;
+            }
+            DatabaseException failure = e instanceof DatabaseException
+                    ? new DatabaseException("Group commit failed", e.getCause(), ((DatabaseException) e).getReason())
+                    : new DatabaseException("Group commit failed", e);
+            batch.get(0).result.completeExceptionally(failure);
+            return;
+        }
+        batches.increment();
+        operations.add(batch.size());
+        // complete only after the connection is back in the pool, so woken callers can use it
+        for (Pending p : batch) {
+            if (p.rejection != null) p.result.completeExceptionally(p.rejection);
+            else p.result.complete(null);
+        }
+    }
+
+    // one attempt; the engine rolls back and calls it again after a lock conflict
+    private void apply(Connection conn, List<Pending> batch) throws SQLException {
+        SortedSet<Integer> ids = new TreeSet<>();
+        for (Pending p : batch) {
+            for (int id : p.accountIds) ids.add(id);
+        }
+        rowLocker.lock(conn, ids);
+        List<LedgerEntry> rows = new ArrayList<>();
+        for (Pending p : batch) {
+            p.rejection = null;
+            try {
+                rows.addAll(p.op.apply(conn));
+            } catch (DatabaseException e) {
+                p.rejection = e;
+            }
+        }
+        if (!rows.isEmpty()) rowWriter.write(conn, rows);
+    }
+
+    public int getQueueDepth() { return queue.size(); }
+    public long getBatchCount() { return batches.sum(); }
+    public long getOperationCount() { return operations.sum(); }
+    public long getFailedBatchCount() { return failedBatches.sum(); }
+
+    public double getAverageBatchSize() {
+        long b = batches.sum();
+        return b == 0 ? 0 : (double) operations.sum() / b;
+    }
+
+    @Override
+    public void close() {
+        stop();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failQueued(new DatabaseException("Group commit writer is closed", null));
+    }
+}
@@ -1,18 +1,58 @@
 package atm;
 
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 public class HashUtil {
-    public static String sha256Hex(String input) {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // MessageDigest is not thread-safe; one instance per thread avoids the provider lookup on every call
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] digest = md.digest(input.getBytes(java.nio.charset.StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder();
-            for (byte b : digest) sb.append(String.format("%02x", b));
-            return sb.toString();
+            return MessageDigest.getInstance("SHA-256");
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("SHA-256 not supported", e);
         }
+    });
+
+    public static byte[] sha256(String input) {
+        // digest() also resets the instance for the next call
+        return SHA256.get().digest(input.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String sha256Hex(String input) {
+        return toHex(sha256(input));
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0, j = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            out[j++] = HEX[b >>> 4];
+            out[j++] = HEX[b & 0x0f];
+        }
+        return new String(out);
+    }
+
+    // null if the string is not valid hex; upper and lower case are both accepted
+    public static byte[] fromHex(String hex) {
+        if (hex == null || (hex.length() & 1) != 0) return null;
+        byte[] out = new byte[hex.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) return null;
+            out[i] = (byte) ((hi << 4) | lo);
+        }
+        return out;
+    }
+
+    /**
+     * Checks a PIN against a stored hex SHA-256 hash, comparing the raw digests in constant time.
+     */
+    public static boolean matches(String pin, String expectedHex) {
+        byte[] expected = fromHex(expectedHex);
+        return expected != null && MessageDigest.isEqual(sha256(pin), expected);
     }
 }
@@ -1,30 +1,233 @@
 package atm;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Simple cache to hold Account objects loaded from DB.
- * Demonstrates Collections & Generics and thread-safe map.
+ * Bounded cache of Account objects loaded from DB.
+ * Entries expire after a TTL and the least recently used entry is evicted once the cache is full.
+ * Registered as an {@link AccountChangeListener}, it drops an account as soon as a change to it commits.
+ * Concurrent misses for the same account share a single load.
  */
-public class InMemoryCache {
-    private final Map<Integer, Account> accounts = new ConcurrentHashMap<>();
+public class InMemoryCache implements AccountChangeListener {
+    public interface Loader {
+        Account load(int id) throws DatabaseException;
+    }
+
+    public interface BulkLoader {
+        List<Account> load(List<Integer> ids) throws DatabaseException;
+    }
+
+    private static final class Entry {
+        final Account account;
+        final long expiresAt;
+
+        Entry(Account account, long expiresAt) {
+            this.account = account;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<Integer, Entry> accounts;
+    private final Map<Integer, CompletableFuture<Account>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final OperationTimer lookups = new OperationTimer("cache_get_or_load", "InMemoryCache.getOrLoad, hits and loads");
+
+    public InMemoryCache() {
+        this(DBConfig.CACHE_MAX_ENTRIES, DBConfig.CACHE_TTL_MS);
+    }
+
+    public InMemoryCache(int maxEntries, long ttlMs) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.accounts = new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() <= InMemoryCache.this.maxEntries) return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
 
     public Account get(int id) {
-        return accounts.get(id);
+        synchronized (this) {
+            Entry e = accounts.get(id);
+            if (e != null && e.expiresAt - System.nanoTime() > 0) {
+                hits.increment();
+                return e.account;
+            }
+            if (e != null) {
+                accounts.remove(id);
+                expirations.increment();
+            }
+        }
+        misses.increment();
+        return null;
     }
 
-    public void put(Account a) {
-        accounts.put(a.getAccountId(), a);
+    public synchronized void put(Account a) {
+        accounts.put(a.getAccountId(), new Entry(a, System.nanoTime() + ttlNanos));
     }
 
-    public void remove(int id) {
+    public synchronized void remove(int id) {
         accounts.remove(id);
+        // a load that started before this call may have read the old row; don't let it populate the cache
+        loading.remove(id);
+    }
+
+    @Override
+    public void accountChanged(int accountId) {
+        invalidations.increment();
+        remove(accountId);
+    }
+
+    /**
+     * Returns the cached account or loads it; concurrent callers missing on the same id wait for one load.
+     */
+    public Account getOrLoad(int id, Loader loader) throws DatabaseException {
+        return lookups.time(() -> lookup(id, loader));
+    }
+
+    private Account lookup(int id, Loader loader) throws DatabaseException {
+        Account a = get(id);
+        if (a != null) return a;
+        CompletableFuture<Account> mine = new CompletableFuture<>();
+        CompletableFuture<Account> inFlight = loading.putIfAbsent(id, mine);
+        if (inFlight != null) return await(inFlight);
+        synchronized (this) {
+            // a load that finished between our miss and our claim has already cached the account
+            Entry e = accounts.get(id);
+            if (e != null && e.expiresAt - System.nanoTime() > 0) {
+                loading.remove(id, mine);
+                mine.complete(e.account);
+                return e.account;
+            }
+        }
+        try {
+            loads.increment();
+            a = loader.load(id);
+            synchronized (this) {
+                if (loading.remove(id, mine) && a != null) put(a);
+            }
+            mine.complete(a);
+            return a;
+        } catch (DatabaseException | RuntimeException e) {
+            loading.remove(id, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static Account await(CompletableFuture<Account> f) throws DatabaseException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted while loading account", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DatabaseException) throw (DatabaseException) e.getCause();
+            throw new DatabaseException("Error loading account", e.getCause());
+        }
+    }
+
+    /**
+     * Loads {@code ids} with one bulk call and caches them, skipping ids already cached or being loaded.
+     * Lookups for these ids wait for this load, and an id changed while it runs is not cached, as with
+     * {@link #getOrLoad}. Returns the number of accounts cached.
+     */
+    public int preload(List<Integer> ids, BulkLoader loader) throws DatabaseException {
+        Map<Integer, CompletableFuture<Account>> mine = new HashMap<>();
+        for (int id : ids) {
+            synchronized (this) {
+                if (accounts.containsKey(id)) continue;
+            }
+            CompletableFuture<Account> f = new CompletableFuture<>();
+            if (loading.putIfAbsent(id, f) == null) mine.put(id, f);
+        }
+        if (mine.isEmpty()) return 0;
+        Map<Integer, Account> found = new HashMap<>();
+        try {
+            loads.increment();
+            for (Account a : loader.load(new ArrayList<>(mine.keySet()))) found.put(a.getAccountId(), a);
+        } catch (DatabaseException | RuntimeException e) {
+            for (Map.Entry<Integer, CompletableFuture<Account>> m : mine.entrySet()) {
+                loading.remove(m.getKey(), m.getValue());
+                m.getValue().completeExceptionally(e);
+            }
+            throw e;
+        }
+        int cached = 0;
+        synchronized (this) {
+            for (Map.Entry<Integer, CompletableFuture<Account>> m : mine.entrySet()) {
+                Account a = found.get(m.getKey());
+                if (loading.remove(m.getKey(), m.getValue()) && a != null) {
+                    put(a);
+                    cached++;
+                }
+            }
+        }
+        for (Map.Entry<Integer, CompletableFuture<Account>> m : mine.entrySet()) m.getValue().complete(found.get(m.getKey()));
+        return cached;
+    }
+
+    /** Ids of up to {@code max} cached accounts, most recently used first. */
+    public synchronized List<Integer> hottestIds(int max) {
+        List<Integer> ids = new ArrayList<>(accounts.keySet());
+        List<Integer> out = new ArrayList<>(Math.min(max, ids.size()));
+        // access order: the most recently used entry is last
+        for (int i = ids.size() - 1; i >= 0 && out.size() < max; i--) out.add(ids.get(i));
+        return out;
     }
 
     // For demo only: load from DB
     public void loadFromDB(int id, AccountDAO dao) throws DatabaseException {
-        Account a = dao.findById(id);
-        if (a != null) put(a);
+        getOrLoad(id, dao::findById);
+    }
+
+    /** Adds lookup latency and hit/miss counts to {@code registry}. */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.register(lookups);
+        registry.gauge("cache_entries", "Accounts in the cache", this::size);
+        registry.gauge("cache_hits_total", "Cache hits", this::getHitCount);
+        registry.gauge("cache_misses_total", "Cache misses", this::getMissCount);
+        registry.gauge("cache_loads_total", "Accounts loaded from the database", this::getLoadCount);
+        registry.gauge("cache_evictions_total", "Entries evicted for size", this::getEvictionCount);
+        registry.gauge("cache_invalidations_total", "Entries dropped after a committed change", this::getInvalidationCount);
+    }
+
+    public synchronized int size() { return accounts.size(); }
+    public long getHitCount() { return hits.sum(); }
+    public long getMissCount() { return misses.sum(); }
+    public long getLoadCount() { return loads.sum(); }
+    public long getEvictionCount() { return evictions.sum(); }
+    public long getExpirationCount() { return expirations.sum(); }
+    public long getInvalidationCount() { return invalidations.sum(); }
+
+    public double getHitRatio() {
+        long h = hits.sum(), total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return "InMemoryCache{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", loads=" + getLoadCount() + ", evictions=" + getEvictionCount() + '}';
     }
 }
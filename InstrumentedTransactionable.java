@@ -0,0 +1,58 @@
+package atm;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Transactionable decorator that times every call and counts it by outcome
+ * (success, insufficient funds, not found, invalid, SQL error).
+ */
+public class InstrumentedTransactionable implements Transactionable {
+    private final Transactionable delegate;
+    private final OperationTimer withdraws = new OperationTimer("withdraw", "Transactionable.withdraw");
+    private final OperationTimer deposits = new OperationTimer("deposit", "Transactionable.deposit");
+    private final OperationTimer transfers = new OperationTimer("transfer", "Transactionable.transfer");
+    private final OperationTimer batches = new OperationTimer("transfer_batch", "Transactionable.transferBatch");
+
+    public InstrumentedTransactionable(Transactionable delegate) {
+        this.delegate = delegate;
+    }
+
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.register(withdraws);
+        registry.register(deposits);
+        registry.register(transfers);
+        registry.register(batches);
+    }
+
+    @Override
+    public void withdraw(int accountId, BigDecimal amount) throws DatabaseException {
+        withdraws.time(() -> {
+            delegate.withdraw(accountId, amount);
+            return null;
+        });
+    }
+
+    @Override
+    public void deposit(int accountId, BigDecimal amount) throws DatabaseException {
+        deposits.time(() -> {
+            delegate.deposit(accountId, amount);
+            return null;
+        });
+    }
+
+    @Override
+    public void transfer(int fromAccountId, int toAccountId, BigDecimal amount) throws DatabaseException {
+        transfers.time(() -> {
+            delegate.transfer(fromAccountId, toAccountId, amount);
+            return null;
+        });
+    }
+
+    @Override
+    public List<TransferResult> transferBatch(List<TransferInstruction> instructions) throws DatabaseException {
+        return batches.time(() -> delegate.transferBatch(instructions));
+    }
+
+    public Transactionable getDelegate() { return delegate; }
+}
@@ -0,0 +1,162 @@
+package atm;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Copies journal records into the database through {@link AccountDAO#applyJournalBatch}.
+ * The database records how far it has applied the journal in the same transaction as the rows, so that
+ * position, read at startup, is what replay resumes from; the journal's own checkpoint only trails it to let
+ * old segments be deleted.
+ * {@link #replayPending()} drains the journal once (startup); {@link #start()} keeps following it from a
+ * background thread and rides out database outages by retrying the same batch.
+ */
+public class JournalReplayer implements AutoCloseable {
+    private final TransactionJournal journal;
+    private final AccountDAO store;
+    private final int batchSize;
+    private Thread thread;
+    private volatile boolean closed;
+    // last sequence number known to be in the database; -1 until read from it
+    private volatile long appliedSeq = -1;
+
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public JournalReplayer(TransactionJournal journal, AccountDAO store) {
+        this(journal, store, DBConfig.JOURNAL_REPLAY_BATCH);
+    }
+
+    public JournalReplayer(TransactionJournal journal, AccountDAO store, int batchSize) {
+        this.journal = journal;
+        this.store = store;
+        this.batchSize = batchSize;
+    }
+
+    /** Applies everything after the checkpoint; returns the number of records applied. */
+    public int replayPending() throws DatabaseException {
+        int total = 0;
+        for (;;) {
+            int n = replayBatch();
+            if (n == 0) return total;
+            total += n;
+        }
+    }
+
+    // one database transaction per batch, which also moves the applied position, so a batch that is retried
+    // after a lost commit acknowledgement is recognised and skipped; returns how far the position moved
+    private synchronized int replayBatch() throws DatabaseException {
+        if (appliedSeq < 0) {
+            appliedSeq = store.findAppliedJournalSeq(journal.getId(), journal.getCheckpoint());
+            checkpoint();
+        }
+        long from = appliedSeq;
+        List<TransactionJournal.Record> batch = journal.read(from, batchSize);
+        if (batch.isEmpty()) return 0;
+        long last = batch.get(batch.size() - 1).seq;
+        if (store.applyJournalBatch(journal.getId(), from, last, toEntries(batch))) {
+            appliedSeq = last;
+            replayed.add(batch.size());
+        } else {
+            appliedSeq = store.findAppliedJournalSeq(journal.getId(), from);
+            if (appliedSeq <= from) throw new DatabaseException("Journal replay position did not advance past " + from, null);
+        }
+        checkpoint();
+        return (int) (appliedSeq - from);
+    }
+
+    private void checkpoint() {
+        if (journal.getCheckpoint() >= appliedSeq) return;
+        try {
+            journal.checkpoint(appliedSeq);
+            journal.deleteCheckpointedSegments();
+        } catch (IOException e) {
+            // the database holds the position, so this only keeps old segments around until the next batch
+            System.err.println("Could not write journal checkpoint: " + e.getMessage());
+        }
+    }
+
+    public synchronized void start() {
+        if (thread != null) return;
+        thread = new Thread(this::run, "atm-journal-replay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        long backoffMs = 0;
+        while (!closed || getLag() > 0) {
+            int n;
+            try {
+                n = replayBatch();
+                backoffMs = 0;
+            } catch (DatabaseException | RuntimeException e) {
+                if (closed) return; // the rest is replayed on next start
+                failures.increment();
+                System.err.println("Journal replay failed, will retry: " + e.getMessage());
+                backoffMs = Math.min(DBConfig.JOURNAL_REPLAY_MAX_BACKOFF_MS, Math.max(50, backoffMs * 2));
+                n = 0;
+            }
+            if (n == 0) {
+                try {
+                    Thread.sleep(backoffMs > 0 ? backoffMs : DBConfig.JOURNAL_REPLAY_POLL_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    static List<LedgerEntry> toEntries(List<TransactionJournal.Record> records) {
+        List<LedgerEntry> out = new ArrayList<>(records.size() * 2);
+        for (TransactionJournal.Record r : records) {
+            BigDecimal amount = MinorUnits.toDecimal(r.amountMinor);
+            // rows keep the time the ledger accepted the operation, not the time they reach the database
+            Timestamp at = new Timestamp(r.timestamp);
+            switch (r.type) {
+                case TransactionJournal.WITHDRAW:
+                    out.add(new LedgerEntry(r.accountId, "WITHDRAW", amount, "ATM withdraw", at));
+                    break;
+                case TransactionJournal.DEPOSIT:
+                    out.add(new LedgerEntry(r.accountId, "DEPOSIT", amount, "ATM deposit", at));
+                    break;
+                case TransactionJournal.TRANSFER:
+                    out.add(new LedgerEntry(r.accountId, "TRANSFER_OUT", amount, "Transfer to " + r.remarkId, at));
+                    out.add(new LedgerEntry(r.remarkId, "TRANSFER_IN", amount, "Transfer from " + r.accountId, at));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown journal record type " + r.type);
+            }
+        }
+        return out;
+    }
+
+    /** Journal records not yet in the database. */
+    public long getLag() {
+        long applied = appliedSeq;
+        return journal.getLastSeq() - (applied < 0 ? journal.getCheckpoint() : applied);
+    }
+
+    public long getReplayedCount() { return replayed.sum(); }
+    public long getFailureCount() { return failures.sum(); }
+
+    /** Stops following the journal after draining what the database will take within the timeout. */
+    @Override
+    public void close() {
+        closed = true;
+        Thread t;
+        synchronized (this) {
+            t = thread;
+        }
+        if (t == null) return;
+        try {
+            t.join(DBConfig.JOURNAL_SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package atm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent latency histogram in nanoseconds with log-linear buckets, in the style of HdrHistogram.
+ * Each power of two is split into 32 buckets, so a reported percentile is within about 3% of the recorded
+ * value; values from 0 to about 18 minutes are tracked and larger ones land in the last bucket.
+ * Recording is a few atomic adds and never allocates.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40; // 2^40 ns
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    static int bucketOf(long nanos) {
+        if (nanos < 2 * SUB_COUNT) return (int) Math.max(0, nanos);
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) (nanos >>> shift) - SUB_COUNT;
+    }
+
+    // highest value that falls into the bucket
+    static long upperBoundOf(int bucket) {
+        if (bucket < 2 * SUB_COUNT) return bucket;
+        int shift = bucket / SUB_COUNT - 1;
+        long sub = bucket % SUB_COUNT + SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketOf(nanos));
+        total.increment();
+        sum.add(nanos);
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+            // retry
+        }
+    }
+
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() { return total.sum(); }
+    public long getSumNanos() { return sum.sum(); }
+    public long getMaxNanos() { return max.get(); }
+
+    public double getMeanNanos() {
+        long n = total.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /** Value at or below which {@code percentile} percent of the recordings fall, in nanoseconds. */
+    public long getValueAtPercentile(double percentile) {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) n += counts.get(i);
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(upperBoundOf(i), max.get());
+        }
+        return max.get();
+    }
+
+    public double getValueAtPercentileMillis(double percentile) {
+        return getValueAtPercentile(percentile) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,39 @@
+package atm;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
+/**
+ * One row destined for the transactions table.
+ * Without a timestamp the row is stamped with the time of the commit that writes it.
+ */
+public class LedgerEntry {
+    private final int accountId;
+    private final String type;
+    private final BigDecimal amount;
+    private final String remark;
+    private final Timestamp timestamp;
+
+    public LedgerEntry(int accountId, String type, BigDecimal amount, String remark) {
+        this(accountId, type, amount, remark, null);
+    }
+
+    public LedgerEntry(int accountId, String type, BigDecimal amount, String remark, Timestamp timestamp) {
+        this.accountId = accountId;
+        this.type = type;
+        this.amount = amount;
+        this.remark = remark;
+        this.timestamp = timestamp;
+    }
+
+    public int getAccountId() { return accountId; }
+    public String getType() { return type; }
+    public BigDecimal getAmount() { return amount; }
+    public String getRemark() { return remark; }
+    public Timestamp getTimestamp() { return timestamp; }
+
+    @Override
+    public String toString() {
+        return "LedgerEntry{" + "accountId=" + accountId + ", type='" + type + '\'' + ", amount=" + amount + ", remark='" + remark + '\'' + ", timestamp=" + timestamp + '}';
+    }
+}
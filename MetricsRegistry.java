@@ -0,0 +1,174 @@
+package atm;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Named timers, histograms and gauges of the running application.
+ * Components add their own instruments through their {@code registerMetrics} methods; the registry renders
+ * them in the Prometheus text format (see {@link MetricsHttpServer}) and as attributes of a JMX MBean.
+ */
+public class MetricsRegistry {
+    private static final String PREFIX = "atm_";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final class Histogram {
+        final String help;
+        final LatencyHistogram histogram;
+
+        Histogram(String help, LatencyHistogram histogram) {
+            this.help = help;
+            this.histogram = histogram;
+        }
+    }
+
+    private static final class Gauge {
+        final String help;
+        final DoubleSupplier value;
+
+        Gauge(String help, DoubleSupplier value) {
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    private final Map<String, OperationTimer> timers = new LinkedHashMap<>();
+    private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+    private final Map<String, Gauge> gauges = new LinkedHashMap<>();
+
+    public synchronized void register(OperationTimer timer) {
+        timers.put(timer.getName(), timer);
+    }
+
+    public synchronized void histogram(String name, String help, LatencyHistogram histogram) {
+        histograms.put(name, new Histogram(help, histogram));
+    }
+
+    public synchronized void gauge(String name, String help, DoubleSupplier value) {
+        gauges.put(name, new Gauge(help, value));
+    }
+
+    /** Prometheus text exposition format; latencies as summaries in seconds. */
+    public synchronized String toPrometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        for (OperationTimer t : timers.values()) {
+            summary(sb, t.getName(), t.getHelp(), t.getLatency());
+            String total = PREFIX + t.getName() + "_total";
+            sb.append("# HELP ").append(total).append(' ').append(t.getHelp()).append(", by outcome\n");
+            sb.append("# TYPE ").append(total).append(" counter\n");
+            for (OperationTimer.Outcome o : OperationTimer.Outcome.values()) {
+                sb.append(total).append("{outcome=\"").append(o.name().toLowerCase(Locale.ROOT)).append("\"} ")
+                        .append(t.getCount(o)).append('\n');
+            }
+        }
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+            summary(sb, e.getKey(), e.getValue().help, e.getValue().histogram);
+        }
+        for (Map.Entry<String, Gauge> e : gauges.entrySet()) {
+            String name = PREFIX + e.getKey();
+            sb.append("# HELP ").append(name).append(' ').append(e.getValue().help).append('\n');
+            sb.append("# TYPE ").append(name).append(" gauge\n");
+            sb.append(name).append(' ').append(e.getValue().value.getAsDouble()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void summary(StringBuilder sb, String metric, String help, LatencyHistogram h) {
+        String name = PREFIX + metric + "_seconds";
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" summary\n");
+        for (double q : QUANTILES) {
+            sb.append(name).append("{quantile=\"").append(q).append("\"} ")
+                    .append(h.getValueAtPercentile(q * 100) / 1e9).append('\n');
+        }
+        sb.append(name).append("_sum ").append(h.getSumNanos() / 1e9).append('\n');
+        sb.append(name).append("_count ").append(h.getCount()).append('\n');
+    }
+
+    /** Flat name/value view used for the JMX attributes; latencies in milliseconds. */
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        for (OperationTimer t : timers.values()) {
+            latencies(out, t.getName(), t.getLatency());
+            for (OperationTimer.Outcome o : OperationTimer.Outcome.values()) {
+                out.put(t.getName() + "_" + o.name().toLowerCase(Locale.ROOT), t.getCount(o));
+            }
+        }
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) latencies(out, e.getKey(), e.getValue().histogram);
+        for (Map.Entry<String, Gauge> e : gauges.entrySet()) out.put(e.getKey(), e.getValue().value.getAsDouble());
+        return out;
+    }
+
+    private static void latencies(Map<String, Object> out, String name, LatencyHistogram h) {
+        out.put(name + "_count", h.getCount());
+        out.put(name + "_mean_ms", h.getMeanNanos() / 1e6);
+        out.put(name + "_p50_ms", h.getValueAtPercentileMillis(50));
+        out.put(name + "_p99_ms", h.getValueAtPercentileMillis(99));
+        out.put(name + "_max_ms", h.getMaxNanos() / 1e6);
+    }
+
+    /** Publishes the snapshot as read-only attributes of {@code atm:type=Metrics} on the platform MBean server. */
+    public void registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("atm:type=Metrics");
+        if (server.isRegistered(name)) server.unregisterMBean(name);
+        server.registerMBean(new MetricsMBean(), name);
+    }
+
+    private final class MetricsMBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object v = snapshot().get(attribute);
+            if (v == null) throw new AttributeNotFoundException(attribute);
+            return v;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Object> snap = snapshot();
+            AttributeList list = new AttributeList();
+            for (String a : attributes) {
+                if (snap.containsKey(a)) list.add(new Attribute(a, snap.get(a)));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            throw new UnsupportedOperationException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            Map<String, Object> snap = snapshot();
+            MBeanAttributeInfo[] attrs = new MBeanAttributeInfo[snap.size()];
+            int i = 0;
+            for (Map.Entry<String, Object> e : snap.entrySet()) {
+                attrs[i++] = new MBeanAttributeInfo(e.getKey(), e.getValue().getClass().getName(), e.getKey(), true, false, false);
+            }
+            return new MBeanInfo(MetricsRegistry.class.getName(), "ATM metrics", attrs, null, null, null);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package atm;
+
+import java.util.List;
+
+/**
+ * Current account state plus its most recent transactions, newest first.
+ */
+public class MiniStatement {
+    private final Account account;
+    private final List<TransactionRecord> recent;
+
+    public MiniStatement(Account account, List<TransactionRecord> recent) {
+        this.account = account;
+        this.recent = recent;
+    }
+
+    public Account getAccount() { return account; }
+    public List<TransactionRecord> getRecent() { return recent; }
+}
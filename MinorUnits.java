@@ -0,0 +1,27 @@
+package atm;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Converts between BigDecimal amounts and long cents, the storage unit of the in-memory ledger.
+ */
+public final class MinorUnits {
+    public static final int SCALE = 2; // matches DECIMAL(15,2) in init.sql
+
+    private MinorUnits() {
+    }
+
+    public static long toMinor(BigDecimal amount) throws DatabaseException {
+        try {
+            return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new DatabaseException("Amount must have at most " + SCALE + " decimal places: " + amount, e,
+                    DatabaseException.Reason.INVALID);
+        }
+    }
+
+    public static BigDecimal toDecimal(long minor) {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+}
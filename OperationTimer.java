@@ -0,0 +1,67 @@
+package atm;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram plus outcome counts for one kind of operation.
+ * {@link #time} wraps a call; code that picks its own outcome records with {@link #record}.
+ */
+public class OperationTimer {
+    public enum Outcome { SUCCESS, NOT_FOUND, INSUFFICIENT_FUNDS, INVALID, SQL_ERROR, OTHER }
+
+    public interface Call<T> {
+        T call() throws DatabaseException;
+    }
+
+    private final String name;
+    private final String help;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+
+    public OperationTimer(String name, String help) {
+        this.name = name;
+        this.help = help;
+        for (int i = 0; i < outcomes.length; i++) outcomes[i] = new LongAdder();
+    }
+
+    public void record(long startNanos, Outcome outcome) {
+        latency.recordSince(startNanos);
+        outcomes[outcome.ordinal()].increment();
+    }
+
+    public void success(long startNanos) {
+        record(startNanos, Outcome.SUCCESS);
+    }
+
+    public void failure(long startNanos, DatabaseException e) {
+        record(startNanos, outcomeOf(e.getReason()));
+    }
+
+    /** Runs {@code call} and records its latency and outcome. */
+    public <T> T time(Call<T> call) throws DatabaseException {
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            success(start);
+            return result;
+        } catch (DatabaseException e) {
+            failure(start, e);
+            throw e;
+        }
+    }
+
+    public static Outcome outcomeOf(DatabaseException.Reason reason) {
+        switch (reason) {
+            case NOT_FOUND: return Outcome.NOT_FOUND;
+            case INSUFFICIENT_FUNDS: return Outcome.INSUFFICIENT_FUNDS;
+            case INVALID: return Outcome.INVALID;
+            case SQL_ERROR: return Outcome.SQL_ERROR;
+            default: return Outcome.OTHER;
+        }
+    }
+
+    public String getName() { return name; }
+    public String getHelp() { return help; }
+    public LatencyHistogram getLatency() { return latency; }
+    public long getCount(Outcome outcome) { return outcomes[outcome.ordinal()].sum(); }
+}
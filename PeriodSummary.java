@@ -0,0 +1,59 @@
+package atm;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * An account's activity between two dates (inclusive), built from its daily rollups.
+ * {@link #getDays()} holds only the days that had transactions.
+ */
+public class PeriodSummary {
+    private final int accountId;
+    private final LocalDate from;
+    private final LocalDate to;
+    private final BigDecimal openingBalance;
+    private final BigDecimal closingBalance;
+    private final List<DailySummary> days;
+
+    public PeriodSummary(int accountId, LocalDate from, LocalDate to, BigDecimal openingBalance,
+                         BigDecimal closingBalance, List<DailySummary> days) {
+        this.accountId = accountId;
+        this.from = from;
+        this.to = to;
+        this.openingBalance = openingBalance;
+        this.closingBalance = closingBalance;
+        this.days = days;
+    }
+
+    public int getAccountId() { return accountId; }
+    public LocalDate getFrom() { return from; }
+    public LocalDate getTo() { return to; }
+    public BigDecimal getOpeningBalance() { return openingBalance; }
+    public BigDecimal getClosingBalance() { return closingBalance; }
+    public List<DailySummary> getDays() { return days; }
+
+    public int getTransactionCount() {
+        int n = 0;
+        for (DailySummary d : days) n += d.getTransactionCount();
+        return n;
+    }
+
+    public BigDecimal getDebitTotal() {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (DailySummary d : days) sum = sum.add(d.getDebitTotal());
+        return sum;
+    }
+
+    public BigDecimal getCreditTotal() {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (DailySummary d : days) sum = sum.add(d.getCreditTotal());
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return "Account " + accountId + " " + from + ".." + to + ": opening " + openingBalance + ", "
+                + getTransactionCount() + " txns, -" + getDebitTotal() + " +" + getCreditTotal() + ", closing " + closingBalance;
+    }
+}
@@ -0,0 +1,226 @@
+package atm;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Picks the data source for read-only queries: one of the read replicas, balanced round-robin or by fewest
+ * borrowed connections, or the primary.
+ * An account is read from the primary for {@code pinMs} after each of its commits, so a session sees its own
+ * writes even while the replicas lag. A replica that fails to hand out a connection is skipped until the
+ * background probe finds it valid again; with no healthy replica every read goes to the primary.
+ */
+public class ReplicaRouter implements AutoCloseable {
+    public enum Policy { ROUND_ROBIN, LEAST_ACTIVE }
+
+    private static final class Replica {
+        final ConnectionProvider source;
+        final String name;
+        final AtomicInteger active = new AtomicInteger();
+        volatile boolean healthy = true;
+
+        Replica(ConnectionProvider source, String name) {
+            this.source = source;
+            this.name = name;
+        }
+    }
+
+    private final ConnectionProvider primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Policy policy;
+    private final long pinNanos;
+    private final boolean ownsReplicas;
+    private final AtomicInteger next = new AtomicInteger();
+    // account id -> System.nanoTime() until which its reads stay on the primary
+    private final Map<Integer, Long> pins = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService prober;
+
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder pinnedReads = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+
+    public ReplicaRouter(ConnectionProvider primary, List<? extends ConnectionProvider> replicas, Policy policy,
+                         long pinMs, long healthCheckMs) {
+        this(primary, replicas, policy, pinMs, healthCheckMs, false);
+    }
+
+    private ReplicaRouter(ConnectionProvider primary, List<? extends ConnectionProvider> replicas, Policy policy,
+                          long pinMs, long healthCheckMs, boolean ownsReplicas) {
+        this.primary = primary;
+        for (int i = 0; i < replicas.size(); i++) this.replicas.add(new Replica(replicas.get(i), "replica-" + i));
+        this.policy = policy;
+        this.pinNanos = TimeUnit.MILLISECONDS.toNanos(pinMs);
+        this.ownsReplicas = ownsReplicas;
+        this.prober = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "atm-replica-probe");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(100, healthCheckMs);
+        prober.scheduleWithFixedDelay(this::probe, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** A router over pools for {@code DBConfig.REPLICA_URLS}, or null when none are configured. */
+    public static ReplicaRouter fromConfig(ConnectionProvider primary) {
+        if (DBConfig.REPLICA_URLS.length == 0) return null;
+        List<ConnectionPool> pools = new ArrayList<>();
+        for (String url : DBConfig.REPLICA_URLS) pools.add(new ConnectionPool(url, DBConfig.USER, DBConfig.PASS));
+        return new ReplicaRouter(primary, pools, DBConfig.REPLICA_POLICY, DBConfig.READ_YOUR_WRITES_PIN_MS,
+                DBConfig.REPLICA_HEALTH_CHECK_MS, true);
+    }
+
+    /** Keeps {@code accountId}'s reads on the primary for the pin window; call after its commit, before readers are told. */
+    public void pin(int accountId) {
+        if (pinNanos > 0) pins.put(accountId, System.nanoTime() + pinNanos);
+    }
+
+    public boolean isPinned(int accountId) {
+        Long until = pins.get(accountId);
+        if (until == null) return false;
+        if (until - System.nanoTime() > 0) return true;
+        pins.remove(accountId, until);
+        return false;
+    }
+
+    /** A connection for a read-only query about {@code accountId}; the caller closes it. */
+    public Connection getReadConnection(int accountId) throws SQLException {
+        if (isPinned(accountId)) {
+            pinnedReads.increment();
+            return primary.getConnection();
+        }
+        return getReadConnection();
+    }
+
+    /** A connection for a read-only query that needs no read-your-writes guarantee. */
+    public Connection getReadConnection() throws SQLException {
+        // each healthy replica gets at most one try before the read falls back to the primary
+        for (int attempt = 0; attempt < replicas.size(); attempt++) {
+            Replica r = choose();
+            if (r == null) break;
+            try {
+                Connection conn = track(r, r.source.getConnection());
+                replicaReads.increment();
+                return conn;
+            } catch (SQLException e) {
+                r.healthy = false;
+                failovers.increment();
+                System.err.println("Read replica " + r.name + " unavailable, routing around it: " + e.getMessage());
+            }
+        }
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    private Replica choose() {
+        int n = replicas.size();
+        if (policy == Policy.LEAST_ACTIVE) {
+            Replica best = null;
+            // start at a rotating offset so ties do not all land on the first replica
+            int start = Math.floorMod(next.getAndIncrement(), Math.max(1, n));
+            for (int i = 0; i < n; i++) {
+                Replica r = replicas.get((start + i) % n);
+                if (r.healthy && (best == null || r.active.get() < best.active.get())) best = r;
+            }
+            return best;
+        }
+        for (int i = 0; i < n; i++) {
+            Replica r = replicas.get(Math.floorMod(next.getAndIncrement(), n));
+            if (r.healthy) return r;
+        }
+        return null;
+    }
+
+    // counts the borrowed connection against its replica until it is closed
+    private static Connection track(Replica r, Connection conn) {
+        r.active.incrementAndGet();
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean closed;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("close".equals(method.getName())) {
+                    synchronized (this) {
+                        if (!closed) {
+                            closed = true;
+                            r.active.decrementAndGet();
+                        }
+                    }
+                }
+                try {
+                    return method.invoke(conn, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    private void probe() {
+        for (Replica r : replicas) {
+            boolean ok;
+            try (Connection conn = r.source.getConnection()) {
+                ok = conn.isValid(DBConfig.POOL_VALIDATION_TIMEOUT_S);
+            } catch (SQLException e) {
+                ok = false;
+            }
+            if (ok != r.healthy) {
+                System.err.println("Read replica " + r.name + (ok ? " is back" : " failed its health check"));
+                r.healthy = ok;
+            }
+        }
+        long now = System.nanoTime();
+        pins.values().removeIf(until -> until - now <= 0);
+    }
+
+    /** Adds read routing counts and replica health to {@code registry}. */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.gauge("replica_reads_total", "Reads served by a replica", this::getReplicaReadCount);
+        registry.gauge("replica_primary_reads_total", "Reads sent to the primary because no replica was healthy",
+                this::getPrimaryReadCount);
+        registry.gauge("replica_pinned_reads_total", "Reads sent to the primary to show an account's own recent commit",
+                this::getPinnedReadCount);
+        registry.gauge("replica_failovers_total", "Replica connection failures routed around", this::getFailoverCount);
+        registry.gauge("replica_healthy", "Replicas currently taking reads", this::getHealthyReplicaCount);
+    }
+
+    public Policy getPolicy() { return policy; }
+    public int getReplicaCount() { return replicas.size(); }
+    public long getReplicaReadCount() { return replicaReads.sum(); }
+    public long getPrimaryReadCount() { return primaryReads.sum(); }
+    public long getPinnedReadCount() { return pinnedReads.sum(); }
+    public long getFailoverCount() { return failovers.sum(); }
+    public int getPinnedAccountCount() { return pins.size(); }
+
+    public int getHealthyReplicaCount() {
+        int n = 0;
+        for (Replica r : replicas) if (r.healthy) n++;
+        return n;
+    }
+
+    public boolean isHealthy(int replica) { return replicas.get(replica).healthy; }
+    public int getActiveCount(int replica) { return replicas.get(replica).active.get(); }
+
+    @Override
+    public void close() {
+        prober.shutdownNow();
+        if (!ownsReplicas) return;
+        for (Replica r : replicas) {
+            if (r.source instanceof ConnectionPool) ((ConnectionPool) r.source).close();
+        }
+    }
+}
@@ -3,7 +3,7 @@ package atm;
 import java.math.BigDecimal;
 
 public class SavingsAccount extends Account {
-    private BigDecimal minimumBalance = BigDecimal.valueOf(100); // simple example
+    public static final BigDecimal MINIMUM_BALANCE = BigDecimal.valueOf(100); // simple example
 
     public SavingsAccount(int accountId, String ownerName, BigDecimal balance) {
         super(accountId, ownerName, balance);
@@ -11,6 +11,6 @@ public class SavingsAccount extends Account {
 
     @Override
     public boolean canWithdraw(BigDecimal amount) {
-        return balance.subtract(amount).compareTo(minimumBalance) >= 0;
+        return balance.subtract(amount).compareTo(MINIMUM_BALANCE) >= 0;
     }
 }
@@ -0,0 +1,248 @@
+package atm;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory Transactionable backend.
+ * Balances are held as long cents in partitions keyed by account id; each partition is owned by one
+ * thread, so operations on it need no locks. Every accepted operation is appended to a
+ * {@link TransactionJournal} before the caller is answered, and a {@link JournalReplayer} copies the
+ * journal into the database behind it. Records not yet in the database are replayed into it at startup. The database stays the system of record, but while a ledger is running
+ * it must be the only writer of the accounts it serves.
+ * A transfer runs as three partition tasks (check the recipient, debit and journal, credit), so between the
+ * debit and the credit the in-memory balances of different partitions do not add up: a reader summing them can
+ * see the amount missing. The journal holds the transfer as one record, so the database never sees half of it.
+ */
+public class ShardedLedger implements Transactionable, AutoCloseable {
+    private static final long SAVINGS_FLOOR = toMinorUnchecked(SavingsAccount.MINIMUM_BALANCE);
+    private static final long CURRENT_FLOOR = -toMinorUnchecked(CurrentAccount.OVERDRAFT_LIMIT);
+
+    // balance in cents plus the lowest balance a withdrawal may leave, fixed by the account type
+    private static final class Slot {
+        long balance;
+        final long floor;
+
+        Slot(long balance, long floor) {
+            this.balance = balance;
+            this.floor = floor;
+        }
+    }
+
+    private static final class Partition {
+        final ExecutorService thread;
+        final Map<Integer, Slot> slots = new HashMap<>();
+
+        Partition(int index) {
+            this.thread = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "atm-ledger-" + index);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private interface PartitionTask<T> {
+        T run(Partition p) throws DatabaseException;
+    }
+
+    private final AccountDAO store;
+    private final TransactionJournal journal;
+    private final JournalReplayer replayer;
+    private final Partition[] partitions;
+
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public ShardedLedger(AccountDAO store) throws DatabaseException {
+        this(store, DBConfig.JOURNAL_DIR, DBConfig.LEDGER_PARTITIONS);
+    }
+
+    public ShardedLedger(AccountDAO store, String journalDir, int partitionCount) throws DatabaseException {
+        this.store = store;
+        try {
+            this.journal = new TransactionJournal(journalDir);
+        } catch (IOException e) {
+            throw new DatabaseException("Could not open ledger journal " + journalDir, e);
+        }
+        this.replayer = new JournalReplayer(journal, store);
+        // the database must hold every journaled operation before balances are read from it
+        replayer.replayPending();
+        replayer.start();
+        this.partitions = new Partition[Math.max(1, partitionCount)];
+        for (int i = 0; i < partitions.length; i++) partitions[i] = new Partition(i);
+    }
+
+    private static long toMinorUnchecked(BigDecimal amount) {
+        try {
+            return MinorUnits.toMinor(amount);
+        } catch (DatabaseException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Partition partitionOf(int accountId) {
+        return partitions[Math.floorMod(accountId, partitions.length)];
+    }
+
+    private <T> T on(int accountId, PartitionTask<T> task) throws DatabaseException {
+        Partition p = partitionOf(accountId);
+        Future<T> f;
+        try {
+            f = p.thread.submit(() -> task.run(p));
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            throw new DatabaseException("Ledger is closed", e);
+        }
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DatabaseException) throw (DatabaseException) e.getCause();
+            throw new DatabaseException("Ledger error", e.getCause());
+        }
+    }
+
+    // runs on the owning partition thread; the first touch of an account reads it from the primary, since a
+    // lagging replica's balance would become the ledger's
+    private Slot slot(Partition p, int accountId) throws DatabaseException {
+        Slot s = p.slots.get(accountId);
+        if (s == null) {
+            Account a = store.findByIdOnPrimary(accountId);
+            if (a == null) return null;
+            s = new Slot(MinorUnits.toMinor(a.getBalance()), a instanceof SavingsAccount ? SAVINGS_FLOOR : CURRENT_FLOOR);
+            p.slots.put(accountId, s);
+        }
+        return s;
+    }
+
+    private void log(byte type, int accountId, int counterpartyId, long amountMinor) throws DatabaseException {
+        try {
+            journal.append(type, accountId, amountMinor, counterpartyId);
+        } catch (IOException e) {
+            throw new DatabaseException("Could not write ledger journal", e);
+        }
+    }
+
+    private long toMinor(BigDecimal amount) throws DatabaseException {
+        if (amount == null || amount.signum() <= 0) throw reject("Amount must be > 0", DatabaseException.Reason.INVALID);
+        return MinorUnits.toMinor(amount);
+    }
+
+    @Override
+    public void withdraw(int accountId, BigDecimal amount) throws DatabaseException {
+        long minor = toMinor(amount);
+        operations.increment();
+        on(accountId, p -> {
+            Slot s = slot(p, accountId);
+            if (s == null) throw reject("Account not found", DatabaseException.Reason.NOT_FOUND);
+            if (s.balance - minor < s.floor) throw reject("Insufficient funds", DatabaseException.Reason.INSUFFICIENT_FUNDS);
+            log(TransactionJournal.WITHDRAW, accountId, 0, minor);
+            s.balance -= minor;
+            return null;
+        });
+    }
+
+    @Override
+    public void deposit(int accountId, BigDecimal amount) throws DatabaseException {
+        long minor = toMinor(amount);
+        operations.increment();
+        on(accountId, p -> {
+            Slot s = slot(p, accountId);
+            if (s == null) throw reject("Account not found", DatabaseException.Reason.NOT_FOUND);
+            log(TransactionJournal.DEPOSIT, accountId, 0, minor);
+            s.balance += minor;
+            return null;
+        });
+    }
+
+    @Override
+    public void transfer(int fromAccountId, int toAccountId, BigDecimal amount) throws DatabaseException {
+        if (fromAccountId == toAccountId) throw reject("Cannot transfer to the same account", DatabaseException.Reason.INVALID);
+        long minor = toMinor(amount);
+        operations.increment();
+        // accounts are never removed, so once the recipient is known the credit cannot fail
+        Boolean known = on(toAccountId, p -> slot(p, toAccountId) != null);
+        if (!known) throw reject("One of accounts not found", DatabaseException.Reason.NOT_FOUND);
+        on(fromAccountId, p -> {
+            Slot s = slot(p, fromAccountId);
+            if (s == null) throw reject("One of accounts not found", DatabaseException.Reason.NOT_FOUND);
+            if (s.balance - minor < s.floor) throw reject("Insufficient funds for transfer", DatabaseException.Reason.INSUFFICIENT_FUNDS);
+            // one record covers both legs; later operations on the recipient are logged after it
+            log(TransactionJournal.TRANSFER, fromAccountId, toAccountId, minor);
+            s.balance -= minor;
+            return null;
+        });
+        on(toAccountId, p -> {
+            p.slots.get(toAccountId).balance += minor;
+            return null;
+        });
+    }
+
+    @Override
+    public List<TransferResult> transferBatch(List<TransferInstruction> instructions) throws DatabaseException {
+        List<TransferResult> out = new ArrayList<>(instructions.size());
+        for (TransferInstruction t : instructions) {
+            if (t.getAmount() == null || t.getAmount().signum() <= 0 || t.getFromAccountId() == t.getToAccountId()) {
+                out.add(new TransferResult(t, TransferResult.Status.INVALID, "Amount must be > 0 and accounts must differ"));
+                continue;
+            }
+            try {
+                transfer(t.getFromAccountId(), t.getToAccountId(), t.getAmount());
+                out.add(new TransferResult(t, TransferResult.Status.APPLIED, null));
+            } catch (DatabaseException e) {
+                TransferResult.Status status = e.getReason() == DatabaseException.Reason.INSUFFICIENT_FUNDS ? TransferResult.Status.INSUFFICIENT_FUNDS
+                        : e.getReason() == DatabaseException.Reason.NOT_FOUND ? TransferResult.Status.ACCOUNT_NOT_FOUND
+                        : TransferResult.Status.FAILED;
+                out.add(new TransferResult(t, status, e.getMessage()));
+            }
+        }
+        return out;
+    }
+
+    /** Current in-memory balance, or null if the account does not exist. */
+    public BigDecimal getBalance(int accountId) throws DatabaseException {
+        Long minor = on(accountId, p -> {
+            Slot s = slot(p, accountId);
+            return s == null ? null : s.balance;
+        });
+        return minor == null ? null : MinorUnits.toDecimal(minor);
+    }
+
+    private DatabaseException reject(String message, DatabaseException.Reason reason) {
+        rejected.increment();
+        return new DatabaseException(message, null, reason);
+    }
+
+    public long getReplayLag() { return replayer.getLag(); }
+    public long getOperationCount() { return operations.sum(); }
+    public long getRejectedCount() { return rejected.sum(); }
+    public long getReplayedCount() { return replayer.getReplayedCount(); }
+    public long getReplayFailureCount() { return replayer.getFailureCount(); }
+
+    /** Stops the partitions, lets the replayer drain what it can and closes the journal. */
+    @Override
+    public void close() throws DatabaseException {
+        for (Partition p : partitions) p.thread.shutdown();
+        try {
+            for (Partition p : partitions) p.thread.awaitTermination(10, TimeUnit.SECONDS);
+            replayer.close();
+            journal.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new DatabaseException("Error closing ledger journal", e);
+        }
+    }
+}
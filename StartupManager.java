@@ -0,0 +1,190 @@
+package atm;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gets the terminal ready off the EDT: loads the JDBC driver, opens the pool's idle connections and fills the
+ * account cache with the hottest accounts, in parallel, before input is enabled.
+ * The hot set comes from the snapshot written at the last shutdown or, without one, from the busiest accounts
+ * in the daily summaries. Milestones are recorded in milliseconds since JVM start, up to the first committed
+ * transaction, so cold-start changes such as a class-data-sharing archive can be measured.
+ */
+public class StartupManager implements AccountChangeListener {
+    private final ConnectionPool pool;
+    private final AccountDAO dao;
+    private final InMemoryCache cache;
+    private final Path snapshot;
+
+    private volatile long driverReadyMs = -1;
+    private volatile long poolReadyMs = -1;
+    private volatile long cacheReadyMs = -1;
+    private volatile long readyMs = -1;
+    private final AtomicLong firstTransactionMs = new AtomicLong(-1);
+    private final AtomicInteger warmedAccounts = new AtomicInteger();
+
+    public StartupManager(ConnectionPool pool, AccountDAO dao, InMemoryCache cache) {
+        this(pool, dao, cache, Paths.get(DBConfig.CACHE_SNAPSHOT_FILE));
+    }
+
+    public StartupManager(ConnectionPool pool, AccountDAO dao, InMemoryCache cache, Path snapshot) {
+        this.pool = pool;
+        this.dao = dao;
+        this.cache = cache;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Starts warming up on a background thread. The future completes once the cache is warm, or after
+     * {@code DBConfig.STARTUP_MAX_WAIT_MS} so an unreachable database does not keep the terminal locked;
+     * it never completes exceptionally.
+     */
+    public CompletableFuture<Void> start() {
+        CompletableFuture<Void> ready = new CompletableFuture<>();
+        Thread t = new Thread(() -> {
+            warmUp();
+            ready.complete(null);
+        }, "atm-startup");
+        t.setDaemon(true);
+        t.start();
+        return ready.completeOnTimeout(null, DBConfig.STARTUP_MAX_WAIT_MS, TimeUnit.MILLISECONDS)
+                .whenComplete((v, ex) -> {
+                    readyMs = sinceJvmStart();
+                    System.err.println("Startup: " + this);
+                });
+    }
+
+    private void warmUp() {
+        try {
+            Class.forName(DBConfig.JDBC_DRIVER);
+        } catch (ClassNotFoundException e) {
+            System.err.println("JDBC driver " + DBConfig.JDBC_DRIVER + " not found, relying on driver auto-loading");
+        }
+        driverReadyMs = sinceJvmStart();
+        try {
+            pool.warmUp();
+        } catch (Exception e) {
+            System.err.println("Could not open connections at startup: " + e.getMessage());
+            return;
+        } finally {
+            poolReadyMs = sinceJvmStart();
+        }
+        try {
+            warmCache(hotAccountIds());
+        } catch (Exception e) {
+            System.err.println("Cache warm-up failed: " + e.getMessage());
+        } finally {
+            cacheReadyMs = sinceJvmStart();
+        }
+    }
+
+    private List<Integer> hotAccountIds() throws DatabaseException {
+        List<Integer> ids = readSnapshot();
+        if (!ids.isEmpty()) return ids;
+        return dao.findMostActiveAccountIds(DBConfig.WARMUP_RECENT_DAYS, DBConfig.WARMUP_ACCOUNTS);
+    }
+
+    // one bulk load per thread over interleaved slices, so the hottest ids are spread across all of them
+    private void warmCache(List<Integer> ids) throws Exception {
+        int threads = Math.max(1, Math.min(DBConfig.WARMUP_THREADS, ids.size()));
+        List<List<Integer>> slices = new ArrayList<>();
+        for (int i = 0; i < threads; i++) slices.add(new ArrayList<>());
+        for (int i = 0; i < ids.size(); i++) slices.get(i % threads).add(ids.get(i));
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "atm-warmup");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<CompletableFuture<Void>> loads = new ArrayList<>();
+            for (List<Integer> slice : slices) {
+                loads.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        warmedAccounts.addAndGet(cache.preload(slice, dao::findByIds));
+                    } catch (DatabaseException e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                }, workers));
+            }
+            CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0])).get();
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    private List<Integer> readSnapshot() {
+        List<Integer> ids = new ArrayList<>();
+        if (!Files.isRegularFile(snapshot)) return ids;
+        try {
+            for (String line : Files.readAllLines(snapshot, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty() && ids.size() < DBConfig.WARMUP_ACCOUNTS) ids.add(Integer.parseInt(line));
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Ignoring unreadable cache snapshot " + snapshot + ": " + e.getMessage());
+            ids.clear();
+        }
+        return ids;
+    }
+
+    /**
+     * Writes the ids of the hottest cached accounts, most recently used first, for the next start.
+     * Only ids are kept; balances are always read fresh. An empty cache leaves the previous snapshot alone.
+     */
+    public void saveSnapshot() {
+        List<Integer> ids = cache.hottestIds(DBConfig.WARMUP_ACCOUNTS);
+        if (ids.isEmpty()) return;
+        StringBuilder sb = new StringBuilder();
+        for (int id : ids) sb.append(id).append('\n');
+        try {
+            Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+            Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not save cache snapshot " + snapshot + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void accountChanged(int accountId) {
+        firstTransactionMs.compareAndSet(-1, sinceJvmStart());
+    }
+
+    private static long sinceJvmStart() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    /** Adds the startup milestones to {@code registry}; -1 means not reached yet. */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.gauge("startup_ready_ms", "Milliseconds from JVM start until the terminal took input", this::getReadyMs);
+        registry.gauge("startup_first_transaction_ms", "Milliseconds from JVM start until the first commit",
+                this::getFirstTransactionMs);
+        registry.gauge("startup_warmed_accounts", "Accounts loaded into the cache at startup", this::getWarmedAccountCount);
+    }
+
+    public long getDriverReadyMs() { return driverReadyMs; }
+    public long getPoolReadyMs() { return poolReadyMs; }
+    public long getCacheReadyMs() { return cacheReadyMs; }
+    public long getReadyMs() { return readyMs; }
+    public long getFirstTransactionMs() { return firstTransactionMs.get(); }
+    public int getWarmedAccountCount() { return warmedAccounts.get(); }
+
+    @Override
+    public String toString() {
+        return "ready at " + readyMs + " ms (driver " + driverReadyMs + ", pool " + poolReadyMs + ", cache " + cacheReadyMs
+                + " with " + warmedAccounts.get() + " accounts)";
+    }
+}
@@ -0,0 +1,207 @@
+package atm;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-connection cache of prepared statements keyed by SQL text, with LRU eviction.
+ * close() on a cached statement clears its parameters and pending batch, restores the fetch size, max rows and
+ * query timeout it was created with, and keeps it for the next caller. A statement whose other settings were
+ * changed (fetch direction, cursor name, ...) is closed instead of cached. Returning the connection to the pool
+ * gives back any cached statement the borrower left open, the way closing a plain connection closes its statements.
+ */
+public class StatementCache {
+    private final int capacity;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final Map<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+    public StatementCache(int capacity, LongAdder hits, LongAdder misses, LongAdder evictions) {
+        this.capacity = capacity;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    public PreparedStatement prepare(Connection raw, String sql) throws SQLException {
+        if (capacity <= 0) return raw.prepareStatement(sql);
+        synchronized (this) {
+            CachedStatement cs = statements.get(sql);
+            if (cs != null && !cs.inUse) {
+                cs.inUse = true;
+                hits.increment();
+                return cs.proxy;
+            }
+            misses.increment();
+            // the same SQL is already open on this connection: hand out a plain statement
+            if (cs != null) return raw.prepareStatement(sql);
+        }
+        PreparedStatement ps = raw.prepareStatement(sql);
+        CachedStatement cs;
+        try {
+            cs = new CachedStatement(sql, ps);
+        } catch (SQLException e) {
+            closeQuietly(ps);
+            throw e;
+        }
+        cs.inUse = true;
+        synchronized (this) {
+            statements.put(sql, cs);
+            evictOverflow();
+        }
+        return cs.proxy;
+    }
+
+    private void evictOverflow() {
+        Iterator<CachedStatement> it = statements.values().iterator();
+        while (statements.size() > capacity && it.hasNext()) {
+            CachedStatement eldest = it.next();
+            if (eldest.inUse) continue;
+            it.remove();
+            evictions.increment();
+            closeQuietly(eldest.target);
+        }
+    }
+
+    private void giveBack(CachedStatement cs) {
+        boolean keep;
+        synchronized (this) {
+            if (!cs.inUse) return;
+            cs.inUse = false;
+            keep = statements.get(cs.sql) == cs;
+            if (keep && !cs.reusable) {
+                statements.remove(cs.sql);
+                keep = false;
+            }
+        }
+        try {
+            if (keep) cs.reset();
+            else cs.target.close();
+        } catch (SQLException e) {
+            drop(cs);
+        }
+    }
+
+    /** Gives back every statement still checked out; called when the owning connection returns to the pool. */
+    public void releaseAll() {
+        List<CachedStatement> open = new ArrayList<>();
+        synchronized (this) {
+            for (CachedStatement cs : statements.values()) {
+                if (cs.inUse) open.add(cs);
+            }
+        }
+        for (CachedStatement cs : open) giveBack(cs);
+    }
+
+    private void drop(CachedStatement cs) {
+        synchronized (this) {
+            statements.remove(cs.sql, cs);
+        }
+        closeQuietly(cs.target);
+    }
+
+    public synchronized int size() {
+        return statements.size();
+    }
+
+    public synchronized void clear() {
+        for (CachedStatement cs : statements.values()) closeQuietly(cs.target);
+        statements.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException ignored) {
+            // statement is being discarded anyway
+        }
+    }
+
+    private final class CachedStatement implements InvocationHandler {
+        final String sql;
+        final PreparedStatement target;
+        final PreparedStatement proxy;
+        final int defaultFetchSize;
+        final int defaultMaxRows;
+        final int defaultQueryTimeout;
+        boolean inUse;
+        boolean settingsChanged;
+        boolean reusable = true;
+
+        CachedStatement(String sql, PreparedStatement target) throws SQLException {
+            this.sql = sql;
+            this.target = target;
+            this.defaultFetchSize = target.getFetchSize();
+            this.defaultMaxRows = target.getMaxRows();
+            this.defaultQueryTimeout = target.getQueryTimeout();
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, this);
+        }
+
+        // leaves the statement as the next borrower would get it from prepareStatement
+        void reset() throws SQLException {
+            target.clearParameters();
+            target.clearBatch();
+            if (settingsChanged) {
+                // max rows first: some drivers reject a fetch size above the current max rows
+                target.setMaxRows(defaultMaxRows);
+                target.setFetchSize(defaultFetchSize);
+                target.setQueryTimeout(defaultQueryTimeout);
+                settingsChanged = false;
+            }
+        }
+
+        @Override
+        public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    giveBack(this);
+                    return null;
+                case "isClosed":
+                    return !inUse || target.isClosed();
+                case "equals":
+                    return p == args[0];
+                case "hashCode":
+                    return System.identityHashCode(p);
+                case "toString":
+                    return "Cached" + target;
+                case "setFetchSize":
+                case "setMaxRows":
+                case "setQueryTimeout":
+                    settingsChanged = true;
+                    break;
+                case "setLargeMaxRows":
+                case "setFetchDirection":
+                case "setMaxFieldSize":
+                case "setEscapeProcessing":
+                case "setCursorName":
+                case "setPoolable":
+                case "closeOnCompletion":
+                    reusable = false;
+                    break;
+                default:
+                    break;
+            }
+            if (!inUse) throw new SQLException("Statement is closed");
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException && target.isClosed()) drop(this);
+                throw cause;
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package atm;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Statement reads served from account_daily_summary, which {@link AccountDAO} maintains on every commit.
+ * Period summaries and balance-at-date touch one index row per active day instead of every transaction.
+ * History from before the table was introduced is rolled up by the backfill in init.sql.
+ */
+public class StatementService {
+    private static final String SQL_SUMMARY_COLUMNS = "SELECT account_id, summary_date, txn_count, debit_count, credit_count, "
+            + "debit_total, credit_total, closing_balance FROM account_daily_summary ";
+    private static final String SQL_DAYS = SQL_SUMMARY_COLUMNS
+            + "WHERE account_id = ? AND summary_date >= ? AND summary_date <= ? ORDER BY summary_date";
+    private static final String SQL_LAST_ON_OR_BEFORE = SQL_SUMMARY_COLUMNS
+            + "WHERE account_id = ? AND summary_date <= ? ORDER BY summary_date DESC LIMIT 1";
+    private static final String SQL_FIRST_AFTER = SQL_SUMMARY_COLUMNS
+            + "WHERE account_id = ? AND summary_date > ? ORDER BY summary_date LIMIT 1";
+    private static final String SQL_CURRENT_BALANCE = "SELECT balance FROM accounts WHERE account_id = ?";
+
+    private final ConnectionProvider connections;
+    private final AccountDAO dao;
+    private final OperationTimer statements = new OperationTimer("statement_reads", "StatementService period and balance reads");
+
+    public StatementService(ConnectionProvider connections, AccountDAO dao) {
+        this.connections = connections;
+        this.dao = dao;
+    }
+
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.register(statements);
+    }
+
+    /** The account as it is now and its {@code count} most recent transactions. */
+    public MiniStatement miniStatement(int accountId, int count) throws DatabaseException {
+        Account account = dao.findById(accountId);
+        if (account == null) throw new DatabaseException("Account not found", null, DatabaseException.Reason.NOT_FOUND);
+        return new MiniStatement(account, dao.getTransactionPage(accountId, null, count));
+    }
+
+    /** Opening and closing balance, totals and the active days between {@code from} and {@code to}, inclusive. */
+    public PeriodSummary periodSummary(int accountId, LocalDate from, LocalDate to) throws DatabaseException {
+        if (from == null || to == null || from.isAfter(to)) {
+            throw new DatabaseException("Invalid statement period", null, DatabaseException.Reason.INVALID);
+        }
+        return statements.time(() -> {
+            try (Connection conn = connection(accountId)) {
+                BigDecimal opening = balanceAt(conn, accountId, from.minusDays(1));
+                List<DailySummary> days = new ArrayList<>();
+                try (PreparedStatement ps = conn.prepareStatement(SQL_DAYS)) {
+                    ps.setInt(1, accountId);
+                    ps.setDate(2, Date.valueOf(from));
+                    ps.setDate(3, Date.valueOf(to));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) days.add(readSummary(rs));
+                    }
+                }
+                BigDecimal closing = days.isEmpty() ? opening : days.get(days.size() - 1).getClosingBalance();
+                return new PeriodSummary(accountId, from, to, opening, closing, days);
+            } catch (SQLException e) {
+                throw new DatabaseException("Error reading statement", e);
+            }
+        });
+    }
+
+    /** Balance at the end of {@code date}. */
+    public BigDecimal balanceAt(int accountId, LocalDate date) throws DatabaseException {
+        return statements.time(() -> {
+            try (Connection conn = connection(accountId)) {
+                return balanceAt(conn, accountId, date);
+            } catch (SQLException e) {
+                throw new DatabaseException("Error reading statement", e);
+            }
+        });
+    }
+
+    // replicas serve statements too when the DAO has them, with the same read-your-writes pin
+    private Connection connection(int accountId) throws SQLException {
+        ReplicaRouter reads = dao.getReplicaRouter();
+        return reads == null ? connections.getConnection() : reads.getReadConnection(accountId);
+    }
+
+    // the last rollup on or before the date closes it; failing that the next one opens at the same balance,
+    // and an account with no later activity still holds its current balance
+    private BigDecimal balanceAt(Connection conn, int accountId, LocalDate date) throws SQLException, DatabaseException {
+        DailySummary before = querySummary(conn, SQL_LAST_ON_OR_BEFORE, accountId, date);
+        if (before != null) return before.getClosingBalance();
+        DailySummary after = querySummary(conn, SQL_FIRST_AFTER, accountId, date);
+        if (after != null) return after.getOpeningBalance();
+        try (PreparedStatement ps = conn.prepareStatement(SQL_CURRENT_BALANCE)) {
+            ps.setInt(1, accountId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) throw new DatabaseException("Account not found", null, DatabaseException.Reason.NOT_FOUND);
+                return rs.getBigDecimal(1);
+            }
+        }
+    }
+
+    private static DailySummary querySummary(Connection conn, String sql, int accountId, LocalDate date) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, accountId);
+            ps.setDate(2, Date.valueOf(date));
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? readSummary(rs) : null;
+            }
+        }
+    }
+
+    private static DailySummary readSummary(ResultSet rs) throws SQLException {
+        return new DailySummary(rs.getInt("account_id"), rs.getDate("summary_date").toLocalDate(), rs.getInt("txn_count"),
+                rs.getInt("debit_count"), rs.getInt("credit_count"), rs.getBigDecimal("debit_total"),
+                rs.getBigDecimal("credit_total"), rs.getBigDecimal("closing_balance"));
+    }
+}
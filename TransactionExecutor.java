@@ -0,0 +1,208 @@
+package atm;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded executor for banking operations.
+ * At most {@code concurrency} tasks run at once and at most {@code queueCapacity} more wait;
+ * anything beyond that is handled by the rejection policy. Tasks run on a fixed pool of
+ * platform threads or, on Java 21+, on one virtual thread each.
+ */
+public class TransactionExecutor implements AutoCloseable {
+    public enum Backend { PLATFORM, VIRTUAL }
+
+    public enum RejectionPolicy { ABORT, CALLER_RUNS }
+
+    public interface Task<T> {
+        T call() throws Exception;
+    }
+
+    private final Backend backend;
+    private final int concurrency;
+    private final int queueCapacity;
+    private final RejectionPolicy rejectionPolicy;
+    private final ExecutorService delegate;
+    private final Semaphore admission;
+    // only the virtual backend needs an explicit concurrency limit; the platform pool has fixed threads
+    private final Semaphore running;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queueNanos = new LongAdder();
+    private final LongAdder execNanos = new LongAdder();
+    private final AtomicLong maxExecNanos = new AtomicLong();
+
+    public TransactionExecutor() {
+        this(DBConfig.EXECUTOR_BACKEND, DBConfig.EXECUTOR_CONCURRENCY, DBConfig.EXECUTOR_QUEUE_CAPACITY,
+                DBConfig.EXECUTOR_REJECTION_POLICY);
+    }
+
+    public TransactionExecutor(Backend backend, int concurrency, int queueCapacity, RejectionPolicy rejectionPolicy) {
+        if (concurrency <= 0) throw new IllegalArgumentException("concurrency must be > 0");
+        ExecutorService virtual = backend == Backend.VIRTUAL ? newVirtualThreadExecutor() : null;
+        if (backend == Backend.VIRTUAL && virtual == null) {
+            System.err.println("Virtual threads need Java 21+, falling back to platform threads");
+            backend = Backend.PLATFORM;
+        }
+        this.backend = backend;
+        this.concurrency = concurrency;
+        this.queueCapacity = Math.max(0, queueCapacity);
+        this.rejectionPolicy = rejectionPolicy;
+        this.admission = new Semaphore(concurrency + this.queueCapacity);
+        if (backend == Backend.VIRTUAL) {
+            this.delegate = virtual;
+            this.running = new Semaphore(concurrency, true);
+        } else {
+            AtomicInteger n = new AtomicInteger();
+            ThreadFactory factory = r -> {
+                Thread t = new Thread(r, "atm-tx-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            };
+            this.delegate = Executors.newFixedThreadPool(concurrency, factory);
+            this.running = null;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    public <T> CompletableFuture<T> submit(Task<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (!admission.tryAcquire()) {
+            rejected.increment();
+            if (rejectionPolicy == RejectionPolicy.CALLER_RUNS && !delegate.isShutdown()) {
+                // backpressure: the submitting thread pays for the work itself
+                queued.incrementAndGet();
+                runTask(task, result, System.nanoTime());
+            } else {
+                result.completeExceptionally(new RejectedExecutionException(
+                        "Too many pending transactions (limit " + (concurrency + queueCapacity) + ")"));
+            }
+            return result;
+        }
+        long enqueuedAt = System.nanoTime();
+        queued.incrementAndGet();
+        try {
+            delegate.execute(() -> {
+                try {
+                    if (running != null) running.acquireUninterruptibly();
+                    try {
+                        runTask(task, result, enqueuedAt);
+                    } finally {
+                        if (running != null) running.release();
+                    }
+                } finally {
+                    admission.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            admission.release();
+            rejected.increment();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    public CompletableFuture<Void> execute(Runnable task) {
+        return submit(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private <T> void runTask(Task<T> task, CompletableFuture<T> result, long enqueuedAt) {
+        long start = System.nanoTime();
+        queued.decrementAndGet();
+        queueNanos.add(start - enqueuedAt);
+        active.incrementAndGet();
+        try {
+            result.complete(task.call());
+        } catch (Exception | Error e) {
+            failed.increment();
+            result.completeExceptionally(e);
+        } finally {
+            active.decrementAndGet();
+            completed.increment();
+            long took = System.nanoTime() - start;
+            execNanos.add(took);
+            long max;
+            while (took > (max = maxExecNanos.get()) && !maxExecNanos.compareAndSet(max, took)) {
+                // retry
+            }
+        }
+    }
+
+    /** Adds queue depth and task counts to {@code registry}. */
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.gauge("executor_queue_depth", "Tasks admitted but not yet running", this::getQueueDepth);
+        registry.gauge("executor_active", "Tasks running", this::getActiveCount);
+        registry.gauge("executor_completed_total", "Tasks completed", this::getCompletedCount);
+        registry.gauge("executor_failed_total", "Tasks that threw", this::getFailedCount);
+        registry.gauge("executor_rejected_total", "Tasks rejected at admission", this::getRejectedCount);
+    }
+
+    public Backend getBackend() { return backend; }
+    public int getConcurrency() { return concurrency; }
+    public int getQueueCapacity() { return queueCapacity; }
+    public int getQueueDepth() { return queued.get(); }
+    public int getActiveCount() { return active.get(); }
+    public long getCompletedCount() { return completed.sum(); }
+    public long getFailedCount() { return failed.sum(); }
+    public long getRejectedCount() { return rejected.sum(); }
+    public long getMaxExecutionMillis() { return TimeUnit.NANOSECONDS.toMillis(maxExecNanos.get()); }
+
+    public double getAverageExecutionMillis() {
+        long n = completed.sum();
+        return n == 0 ? 0 : execNanos.sum() / 1_000_000.0 / n;
+    }
+
+    public double getAverageQueueMillis() {
+        long n = completed.sum();
+        return n == 0 ? 0 : queueNanos.sum() / 1_000_000.0 / n;
+    }
+
+    /**
+     * Stops accepting work, lets queued and running tasks finish for up to the configured timeout,
+     * then interrupts whatever is left.
+     */
+    @Override
+    public void close() {
+        delegate.shutdown();
+        try {
+            if (!delegate.awaitTermination(DBConfig.EXECUTOR_SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                delegate.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            delegate.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionExecutor{backend=" + backend + ", active=" + getActiveCount() + ", queued=" + getQueueDepth()
+                + ", completed=" + getCompletedCount() + ", rejected=" + getRejectedCount()
+                + ", avgExecMs=" + getAverageExecutionMillis() + '}';
+    }
+}
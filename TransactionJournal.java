@@ -0,0 +1,284 @@
+package atm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32C;
+
+/**
+ * Local append-only journal of ledger operations in memory-mapped segment files.
+ * Records are fixed-size and CRC-checked; a segment that fills up is followed by a new one, and
+ * segments whose records are all checkpointed (already in the database) can be deleted. Because the
+ * records live in mapped memory an append survives a crash of the process as soon as it returns; the
+ * {@link FsyncPolicy} decides how much may be lost if the machine itself goes down.
+ * Each journal directory gets a random id when it is created, so the database can record how far it has
+ * applied this particular journal.
+ */
+public class TransactionJournal implements AutoCloseable {
+    public enum FsyncPolicy {
+        /** force the record to disk before append returns */
+        EVERY_WRITE,
+        /** force from a background thread every {@code DBConfig.JOURNAL_FSYNC_INTERVAL_MS} */
+        INTERVAL,
+        /** leave it to the operating system */
+        NONE
+    }
+
+    public static final byte WITHDRAW = 1;
+    public static final byte DEPOSIT = 2;
+    // one record for both legs: accountId is the sender, remarkId the recipient
+    public static final byte TRANSFER = 3;
+
+    // crc, seq, type, account, amount (minor units), timestamp (epoch ms), remark id
+    static final int RECORD_SIZE = 4 + 8 + 1 + 4 + 8 + 8 + 4;
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    public static final class Record {
+        public final long seq;
+        public final byte type;
+        public final int accountId;
+        public final long amountMinor;
+        public final long timestamp;
+        public final int remarkId;
+
+        Record(long seq, byte type, int accountId, long amountMinor, long timestamp, int remarkId) {
+            this.seq = seq;
+            this.type = type;
+            this.accountId = accountId;
+            this.amountMinor = amountMinor;
+            this.timestamp = timestamp;
+            this.remarkId = remarkId;
+        }
+    }
+
+    private static final class Segment {
+        final Path path;
+        final long firstSeq;
+        final MappedByteBuffer map;
+        int end; // bytes of valid records
+
+        Segment(Path path, long firstSeq, MappedByteBuffer map) {
+            this.path = path;
+            this.firstSeq = firstSeq;
+            this.map = map;
+        }
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final FsyncPolicy fsync;
+    private final String id;
+    private final FileChannel checkpointFile;
+    private final List<Segment> segments = new ArrayList<>();
+    private final byte[] scratch = new byte[RECORD_SIZE];
+    private final CRC32C crc = new CRC32C();
+    private final Thread flusher;
+    private volatile long lastSeq;
+    private volatile long checkpoint;
+    private volatile boolean closed;
+
+    public TransactionJournal(String directory) throws IOException {
+        this(directory, DBConfig.JOURNAL_SEGMENT_BYTES, DBConfig.JOURNAL_FSYNC_POLICY);
+    }
+
+    public TransactionJournal(String directory, int segmentBytes, FsyncPolicy fsync) throws IOException {
+        this.dir = Paths.get(directory);
+        this.segmentBytes = segmentBytes - segmentBytes % RECORD_SIZE;
+        this.fsync = fsync;
+        Files.createDirectories(dir);
+        this.id = readOrCreateId(dir.resolve("journal-id"));
+        this.checkpointFile = FileChannel.open(dir.resolve("checkpoint"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer cp = ByteBuffer.allocate(8);
+        this.checkpoint = checkpointFile.read(cp, 0) == 8 ? cp.getLong(0) : 0;
+        recover();
+        if (fsync == FsyncPolicy.INTERVAL) {
+            flusher = new Thread(this::flushLoop, "atm-journal-fsync");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+
+    private static String readOrCreateId(Path file) throws IOException {
+        if (Files.isRegularFile(file)) return new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+        String id = UUID.randomUUID().toString();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, id.getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        return id;
+    }
+
+    // maps the existing segments and finds the end of the log: the first record that is torn,
+    // fails its CRC or does not continue the sequence
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + SEGMENT_SUFFIX)) {
+            for (Path p : ds) files.add(p);
+        }
+        files.sort(null); // names are zero-padded first sequence numbers
+        long expected = -1;
+        boolean ended = false;
+        for (Path p : files) {
+            long first = Long.parseLong(p.getFileName().toString().replace(SEGMENT_SUFFIX, ""));
+            if (ended || (expected >= 0 && first != expected)) {
+                Files.delete(p); // written after the end of the log, never acknowledged
+                continue;
+            }
+            Segment s = map(p, first);
+            long seq = first;
+            while (s.end + RECORD_SIZE <= segmentBytes) {
+                Record r = read(s.map, s.end);
+                if (r == null || r.seq != seq) break;
+                s.end += RECORD_SIZE;
+                seq++;
+            }
+            segments.add(s);
+            expected = seq;
+            ended = s.end + RECORD_SIZE <= segmentBytes;
+            lastSeq = seq - 1;
+        }
+        if (segments.isEmpty()) {
+            lastSeq = checkpoint;
+            segments.add(map(segmentPath(checkpoint + 1), checkpoint + 1));
+        }
+    }
+
+    private Path segmentPath(long firstSeq) {
+        return dir.resolve(String.format("%020d%s", firstSeq, SEGMENT_SUFFIX));
+    }
+
+    private Segment map(Path p, long firstSeq) throws IOException {
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new Segment(p, firstSeq, ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        }
+    }
+
+    /** Appends one record and returns its sequence number. */
+    public synchronized long append(byte type, int accountId, long amountMinor, int remarkId) throws IOException {
+        if (closed) throw new IOException("Journal is closed");
+        Segment s = segments.get(segments.size() - 1);
+        if (s.end + RECORD_SIZE > segmentBytes) {
+            s.map.force();
+            s = map(segmentPath(lastSeq + 1), lastSeq + 1);
+            segments.add(s);
+        }
+        long seq = lastSeq + 1;
+        ByteBuffer b = ByteBuffer.wrap(scratch);
+        b.putInt(0).putLong(seq).put(type).putInt(accountId).putLong(amountMinor).putLong(System.currentTimeMillis()).putInt(remarkId);
+        crc.reset();
+        crc.update(scratch, 4, RECORD_SIZE - 4);
+        b.putInt(0, (int) crc.getValue());
+        s.map.put(s.end, scratch);
+        if (fsync == FsyncPolicy.EVERY_WRITE) s.map.force(s.end, RECORD_SIZE);
+        s.end += RECORD_SIZE;
+        lastSeq = seq; // publishes the record to readers
+        return seq;
+    }
+
+    private static Record read(ByteBuffer map, int pos) {
+        byte[] bytes = new byte[RECORD_SIZE];
+        map.get(pos, bytes);
+        CRC32C c = new CRC32C();
+        c.update(bytes, 4, RECORD_SIZE - 4);
+        ByteBuffer b = ByteBuffer.wrap(bytes);
+        if (b.getInt() != (int) c.getValue()) return null;
+        long seq = b.getLong();
+        if (seq <= 0) return null;
+        return new Record(seq, b.get(), b.getInt(), b.getLong(), b.getLong(), b.getInt());
+    }
+
+    /** Up to {@code max} records after {@code afterSeq}, oldest first. */
+    public List<Record> read(long afterSeq, int max) {
+        long last = lastSeq;
+        List<Record> out = new ArrayList<>();
+        List<Segment> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(segments);
+        }
+        for (int i = 0; i < snapshot.size() && out.size() < max; i++) {
+            Segment s = snapshot.get(i);
+            long next = i + 1 < snapshot.size() ? snapshot.get(i + 1).firstSeq : last + 1;
+            if (next <= afterSeq + 1) continue;
+            long from = Math.max(afterSeq + 1, s.firstSeq);
+            for (long seq = from; seq < next && seq <= last && out.size() < max; seq++) {
+                Record r = read(s.map, (int) ((seq - s.firstSeq) * RECORD_SIZE));
+                if (r == null) break;
+                out.add(r);
+            }
+        }
+        return out;
+    }
+
+    /** Records that everything up to {@code seq} is in the database. */
+    public synchronized void checkpoint(long seq) throws IOException {
+        checkpointFile.write(ByteBuffer.allocate(8).putLong(0, seq), 0);
+        checkpointFile.force(false);
+        checkpoint = seq;
+    }
+
+    /** Deletes full segments whose records are all checkpointed; returns how many. */
+    public synchronized int deleteCheckpointedSegments() throws IOException {
+        int deleted = 0;
+        while (segments.size() > 1 && segments.get(1).firstSeq - 1 <= checkpoint) {
+            Files.deleteIfExists(segments.remove(0).path);
+            deleted++;
+        }
+        return deleted;
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            try {
+                Thread.sleep(DBConfig.JOURNAL_FSYNC_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                // close() wakes us for a final flush
+            }
+            force();
+        }
+    }
+
+    private void force() {
+        Segment s;
+        synchronized (this) {
+            s = segments.get(segments.size() - 1);
+        }
+        s.map.force();
+    }
+
+    public String getId() { return id; }
+    public long getLastSeq() { return lastSeq; }
+    public long getCheckpoint() { return checkpoint; }
+    public long getLag() { return lastSeq - checkpoint; }
+    public synchronized int getSegmentCount() { return segments.size(); }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        if (flusher != null) {
+            flusher.interrupt();
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (fsync != FsyncPolicy.NONE) force();
+        checkpointFile.close();
+    }
+}
@@ -0,0 +1,38 @@
+package atm;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+
+/**
+ * One row of an account's transaction history.
+ * (timestamp, id) is the keyset cursor for paging through history newest first.
+ */
+public class TransactionRecord {
+    private final int id;
+    private final int accountId;
+    private final Timestamp timestamp;
+    private final String type;
+    private final BigDecimal amount;
+    private final String remark;
+
+    public TransactionRecord(int id, int accountId, Timestamp timestamp, String type, BigDecimal amount, String remark) {
+        this.id = id;
+        this.accountId = accountId;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.amount = amount;
+        this.remark = remark;
+    }
+
+    public int getId() { return id; }
+    public int getAccountId() { return accountId; }
+    public Timestamp getTimestamp() { return timestamp; }
+    public String getType() { return type; }
+    public BigDecimal getAmount() { return amount; }
+    public String getRemark() { return remark; }
+
+    @Override
+    public String toString() {
+        return timestamp + " " + type + " " + amount + " " + remark;
+    }
+}
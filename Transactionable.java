@@ -1,9 +1,13 @@
 package atm;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 public interface Transactionable {
     void deposit(int accountId, BigDecimal amount) throws DatabaseException;
     void withdraw(int accountId, BigDecimal amount) throws DatabaseException;
     void transfer(int fromAccountId, int toAccountId, BigDecimal amount) throws DatabaseException;
+
+    // applies the instructions in order and reports the outcome of each; one rejected instruction does not stop the rest
+    List<TransferResult> transferBatch(List<TransferInstruction> instructions) throws DatabaseException;
 }
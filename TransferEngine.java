@@ -0,0 +1,138 @@
+package atm;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs transfer transactions and retries the ones the database aborted for lock conflicts.
+ * Deadlocks and lock-wait timeouts are retried with jittered exponential backoff up to the
+ * attempt limit; any other failure is reported straight away.
+ */
+public class TransferEngine {
+    public enum Conflict { DEADLOCK, LOCK_TIMEOUT }
+
+    public interface Work {
+        void run(Connection conn) throws SQLException, DatabaseException;
+    }
+
+    /** In-process lock taken around each attempt; null for none. */
+    public interface AttemptLock {
+        AccountLockTable.Held acquire() throws DatabaseException;
+    }
+
+    // MySQL error codes
+    private static final int ER_LOCK_DEADLOCK = 1213;
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+
+    private final ConnectionProvider connections;
+    private final int maxAttempts;
+    private final long backoffBaseMs;
+    private final long backoffMaxMs;
+
+    private final LongAdder transactions = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder deadlocks = new LongAdder();
+    private final LongAdder lockTimeouts = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    public TransferEngine(ConnectionProvider connections) {
+        this(connections, DBConfig.TRANSFER_MAX_ATTEMPTS, DBConfig.TRANSFER_BACKOFF_BASE_MS, DBConfig.TRANSFER_BACKOFF_MAX_MS);
+    }
+
+    public TransferEngine(ConnectionProvider connections, int maxAttempts, long backoffBaseMs, long backoffMaxMs) {
+        this.connections = connections;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffBaseMs = backoffBaseMs;
+        this.backoffMaxMs = backoffMaxMs;
+    }
+
+    /**
+     * Runs {@code work} in its own transaction and commits it, retrying lock conflicts.
+     * A DatabaseException thrown by the work rolls back and is passed on without a retry.
+     */
+    public void execute(Work work) throws DatabaseException {
+        execute(work, null);
+    }
+
+    /**
+     * Like {@link #execute(Work)}, holding {@code lock} for each attempt only: it is released before the
+     * backoff sleep, so other callers queued on it are not held up by this caller's retries.
+     */
+    public void execute(Work work, AttemptLock lock) throws DatabaseException {
+        transactions.increment();
+        for (int attempt = 1; ; attempt++) {
+            SQLException e;
+            AccountLockTable.Held held = lock == null ? null : lock.acquire();
+            try {
+                e = attempt(work);
+            } finally {
+                if (held != null) held.close();
+            }
+            if (e == null) return;
+            Conflict conflict = classify(e);
+            if (conflict == null) throw new DatabaseException("Error during transfer", e);
+            if (conflict == Conflict.DEADLOCK) deadlocks.increment();
+            else lockTimeouts.increment();
+            if (attempt >= maxAttempts) {
+                exhausted.increment();
+                throw new DatabaseException("Transfer failed after " + attempt + " attempts (" + conflict + ")", e);
+            }
+            retries.increment();
+            backoff(attempt);
+        }
+    }
+
+    // one transaction; null once committed, or the failure that rolled it back
+    private SQLException attempt(Work work) throws DatabaseException {
+        try (Connection conn = connections.getConnection()) {
+            conn.setAutoCommit(false);
+            work.run(conn);
+            conn.commit();
+            return null;
+        } catch (SQLException e) {
+            return e;
+        }
+    }
+
+    // null when the failure is not a lock conflict worth retrying
+    public static Conflict classify(SQLException e) {
+        for (SQLException s = e; s != null; s = s.getNextException()) {
+            Throwable t = s;
+            while (t instanceof SQLException) {
+                SQLException x = (SQLException) t;
+                // MySQL's codes decide first: a lock-wait timeout can also carry SQLState 40001 and arrive as
+                // SQLTransactionRollbackException, which would otherwise be counted as a deadlock
+                if (x.getErrorCode() == ER_LOCK_DEADLOCK) return Conflict.DEADLOCK;
+                if (x.getErrorCode() == ER_LOCK_WAIT_TIMEOUT) return Conflict.LOCK_TIMEOUT;
+                String state = x.getSQLState();
+                // HYT00 is the lock timeout state of the embedded H2 stand-in
+                if ("HYT00".equals(state)) return Conflict.LOCK_TIMEOUT;
+                if ("40001".equals(state) || "40P01".equals(state) || x instanceof SQLTransactionRollbackException) {
+                    return Conflict.DEADLOCK;
+                }
+                t = x.getCause();
+            }
+        }
+        return null;
+    }
+
+    private void backoff(int attempt) throws DatabaseException {
+        long cap = Math.min(backoffMaxMs, backoffBaseMs << Math.min(attempt - 1, 20));
+        long sleep = ThreadLocalRandom.current().nextLong(cap + 1); // full jitter
+        try {
+            Thread.sleep(sleep);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException("Interrupted while retrying transfer", e);
+        }
+    }
+
+    public long getTransactionCount() { return transactions.sum(); }
+    public long getRetryCount() { return retries.sum(); }
+    public long getDeadlockCount() { return deadlocks.sum(); }
+    public long getLockTimeoutCount() { return lockTimeouts.sum(); }
+    public long getExhaustedCount() { return exhausted.sum(); }
+}
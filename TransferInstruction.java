@@ -0,0 +1,27 @@
+package atm;
+
+import java.math.BigDecimal;
+
+/**
+ * One transfer in a batch such as a payroll run.
+ */
+public class TransferInstruction {
+    private final int fromAccountId;
+    private final int toAccountId;
+    private final BigDecimal amount;
+
+    public TransferInstruction(int fromAccountId, int toAccountId, BigDecimal amount) {
+        this.fromAccountId = fromAccountId;
+        this.toAccountId = toAccountId;
+        this.amount = amount;
+    }
+
+    public int getFromAccountId() { return fromAccountId; }
+    public int getToAccountId() { return toAccountId; }
+    public BigDecimal getAmount() { return amount; }
+
+    @Override
+    public String toString() {
+        return "TransferInstruction{" + fromAccountId + " -> " + toAccountId + ", amount=" + amount + '}';
+    }
+}
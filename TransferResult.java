@@ -0,0 +1,28 @@
+package atm;
+
+/**
+ * Outcome of one {@link TransferInstruction} in a batch.
+ */
+public class TransferResult {
+    public enum Status { APPLIED, INSUFFICIENT_FUNDS, ACCOUNT_NOT_FOUND, INVALID, FAILED }
+
+    private final TransferInstruction instruction;
+    private final Status status;
+    private final String message;
+
+    public TransferResult(TransferInstruction instruction, Status status, String message) {
+        this.instruction = instruction;
+        this.status = status;
+        this.message = message;
+    }
+
+    public TransferInstruction getInstruction() { return instruction; }
+    public Status getStatus() { return status; }
+    public String getMessage() { return message; }
+    public boolean isApplied() { return status == Status.APPLIED; }
+
+    @Override
+    public String toString() {
+        return instruction + ": " + status + (message == null ? "" : " (" + message + ")");
+    }
+}
@@ -0,0 +1,125 @@
+package atm.bench;
+
+import atm.AccountDAO;
+import atm.ConnectionPool;
+import atm.DatabaseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AccountDAO hot paths against the embedded database.
+ * Throughput gives ops/sec; SampleTime gives the latency percentiles.
+ * Thread count comes from JMH's -t option or {@link BenchmarkRunner}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccountDAOBenchmark {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("1000000000.00");
+    private static final BigDecimal AMOUNT = new BigDecimal("1.00");
+
+    @Param({"CONDITIONAL_UPDATE", "LOCKING", "GROUP_COMMIT"})
+    public AccountDAO.ExecutionMode mode;
+
+    @Param({"UNIFORM", "HOT"})
+    public Skew skew;
+
+    @Param({"10000"})
+    public int accounts;
+
+    @Param({"16"})
+    public int poolSize;
+
+    // added to every commit; 0 measures H2 as is, ~1000 approximates a server that flushes its log per commit
+    @Param({"0"})
+    public long commitDelayMicros;
+
+    private ConnectionPool pool;
+    private AccountDAO dao;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String url = EmbeddedDatabase.url("dao" + DATABASES.incrementAndGet());
+        EmbeddedDatabase.create(url, accounts, OPENING_BALANCE);
+        pool = EmbeddedDatabase.pool(url, poolSize);
+        dao = new AccountDAO(EmbeddedDatabase.withCommitDelay(pool, commitDelayMicros), mode);
+        // give every account some history for the read benchmarks
+        for (int i = 0; i < accounts; i++) dao.deposit(EmbeddedDatabase.FIRST_ACCOUNT_ID + i, AMOUNT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dao.close();
+        pool.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Picker {
+        private final SplittableRandom random = new SplittableRandom();
+
+        int next(AccountDAOBenchmark b) {
+            return EmbeddedDatabase.FIRST_ACCOUNT_ID + b.skew.pick(random, b.accounts);
+        }
+    }
+
+    @Benchmark
+    public void withdraw(Picker picker, Blackhole bh) {
+        try {
+            dao.withdraw(picker.next(this), AMOUNT);
+        } catch (DatabaseException e) {
+            bh.consume(e);
+        }
+    }
+
+    @Benchmark
+    public void deposit(Picker picker, Blackhole bh) {
+        try {
+            dao.deposit(picker.next(this), AMOUNT);
+        } catch (DatabaseException e) {
+            bh.consume(e);
+        }
+    }
+
+    @Benchmark
+    public void transfer(Picker picker, Blackhole bh) {
+        int from = picker.next(this);
+        int to = picker.next(this);
+        if (to == from) to = from == EmbeddedDatabase.FIRST_ACCOUNT_ID ? from + 1 : from - 1;
+        try {
+            dao.transfer(from, to, AMOUNT);
+        } catch (DatabaseException e) {
+            bh.consume(e);
+        }
+    }
+
+    @Benchmark
+    public Object findById(Picker picker) throws DatabaseException {
+        return dao.findById(picker.next(this));
+    }
+
+    @Benchmark
+    public Object getTransactions(Picker picker) throws DatabaseException {
+        return dao.getTransactionPage(picker.next(this), null, 20);
+    }
+}
@@ -0,0 +1,32 @@
+package atm.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once per thread count.
+ * <pre>
+ *   java -Dthreads=1,8,32 -cp benchmarks.jar atm.bench.BenchmarkRunner [include-regex]
+ * </pre>
+ * Results for each thread count are also written to {@code jmh-<threads>t.json}.
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "atm\\.bench\\..*Benchmark.*";
+        for (String t : System.getProperty("threads", "1,4,16").split(",")) {
+            int threads = Integer.parseInt(t.trim());
+            ChainedOptionsBuilder opts = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-" + threads + "t.json");
+            new Runner(opts.build()).run();
+        }
+    }
+}
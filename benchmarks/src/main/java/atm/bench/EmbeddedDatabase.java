@@ -0,0 +1,126 @@
+package atm.bench;
+
+import atm.ConnectionPool;
+import atm.ConnectionProvider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory H2 database in MySQL mode, seeded from init.sql plus synthetic accounts.
+ * Stands in for the MySQL server so the DAO hot paths can be measured locally.
+ */
+public final class EmbeddedDatabase {
+    public static final String USER = "sa";
+    public static final String PASS = "";
+    // synthetic accounts are numbered from here so they never clash with the init.sql samples
+    public static final int FIRST_ACCOUNT_ID = 100_000;
+
+    private EmbeddedDatabase() {
+    }
+
+    public static String url(String name) {
+        return "jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+    }
+
+    /**
+     * Creates the schema from init.sql and adds {@code accounts} synthetic accounts with ids
+     * {@code FIRST_ACCOUNT_ID ..}; even ids are SAVINGS, odd ids CURRENT.
+     */
+    public static void create(String url, int accounts, BigDecimal openingBalance) throws SQLException, IOException {
+        try (Connection conn = DriverManager.getConnection(url, USER, PASS)) {
+            try (Statement st = conn.createStatement()) {
+                for (String sql : readInitScript().split(";")) {
+                    String stmt = stripComments(sql).trim();
+                    // the embedded database is already the target schema, and a fresh one needs no MySQL migrations
+                    if (stmt.isEmpty() || stmt.startsWith("CREATE DATABASE") || stmt.startsWith("USE ")
+                            || isMigration(stmt)) continue;
+                    st.execute(stmt);
+                }
+                // with cached identity values H2 occasionally hands out duplicate ids under concurrent inserts
+                st.execute("ALTER TABLE transactions ALTER COLUMN id SET NO CACHE");
+            }
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO accounts(account_id, owner_name, type, balance) VALUES (?, ?, ?, ?)")) {
+                for (int i = 0; i < accounts; i++) {
+                    int id = FIRST_ACCOUNT_ID + i;
+                    ps.setInt(1, id);
+                    ps.setString(2, "Synthetic " + id);
+                    ps.setString(3, id % 2 == 0 ? "SAVINGS" : "CURRENT");
+                    ps.setBigDecimal(4, openingBalance);
+                    ps.addBatch();
+                    if (i % 1000 == 999) ps.executeBatch();
+                }
+                ps.executeBatch();
+            }
+            conn.commit();
+        }
+    }
+
+    public static ConnectionPool pool(String url, int maxSize) {
+        return new ConnectionPool(url, USER, PASS, maxSize, 1, 60_000L, 30_000L, 0L);
+    }
+
+    /**
+     * Connections from {@code pool} whose commit() takes {@code delayMicros} longer, standing in for the log
+     * flush a durable server pays on every commit; H2 in memory has none. Zero returns the pool itself.
+     */
+    public static ConnectionProvider withCommitDelay(ConnectionPool pool, long delayMicros) {
+        if (delayMicros <= 0) return pool;
+        long delayNanos = TimeUnit.MICROSECONDS.toNanos(delayMicros);
+        return () -> {
+            Connection conn = pool.getConnection();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (p, method, args) -> {
+                        try {
+                            // before the commit, so row locks are held for the delay as they are for a real flush
+                            if ("commit".equals(method.getName())) TimeUnit.NANOSECONDS.sleep(delayNanos);
+                            return method.invoke(conn, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        };
+    }
+
+    public static BigDecimal totalBalance(String url) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, USER, PASS);
+             Statement st = conn.createStatement();
+             java.sql.ResultSet rs = st.executeQuery("SELECT SUM(balance) FROM accounts")) {
+            rs.next();
+            return rs.getBigDecimal(1);
+        }
+    }
+
+    private static String readInitScript() throws IOException {
+        try (InputStream in = EmbeddedDatabase.class.getResourceAsStream("/init.sql")) {
+            if (in == null) throw new IOException("init.sql not found on the classpath");
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static boolean isMigration(String stmt) {
+        return stmt.startsWith("SET @") || stmt.startsWith("PREPARE ") || stmt.startsWith("EXECUTE ")
+                || stmt.startsWith("DEALLOCATE ");
+    }
+
+    private static String stripComments(String sql) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : sql.split("\n")) {
+            int c = line.indexOf("--");
+            sb.append(c >= 0 ? line.substring(0, c) : line).append('\n');
+        }
+        return sb.toString();
+    }
+}
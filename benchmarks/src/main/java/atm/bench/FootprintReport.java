@@ -0,0 +1,110 @@
+package atm.bench;
+
+import atm.Account;
+import atm.CompactAccountStore;
+import atm.CurrentAccount;
+import atm.DatabaseException;
+import atm.InMemoryCache;
+import atm.SavingsAccount;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Heap per cached account and GC pauses under balance updates, InMemoryCache against CompactAccountStore.
+ * <pre>
+ *   java -Xmx4g -cp benchmarks.jar atm.bench.FootprintReport legacy|compact [accounts] [churn-seconds]
+ * </pre>
+ * Run each model in its own JVM so the numbers do not mix. Owner names are the same strings in both
+ * models and are counted in both.
+ */
+public final class FootprintReport {
+    private static final BigDecimal AMOUNT = new BigDecimal("1.25");
+
+    private FootprintReport() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String model = args.length > 0 ? args[0] : "compact";
+        int accounts = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        long before = usedHeapAfterGc();
+        Object keep;
+        Updater updater;
+        if ("legacy".equals(model)) {
+            InMemoryCache cache = new InMemoryCache(accounts, 3_600_000L);
+            for (int i = 0; i < accounts; i++) cache.put(account(i));
+            keep = cache;
+            updater = id -> cache.get(id).deposit(AMOUNT);
+        } else {
+            CompactAccountStore store = new CompactAccountStore(accounts);
+            for (int i = 0; i < accounts; i++) store.put(account(i));
+            keep = store;
+            updater = id -> store.get(id).deposit(AMOUNT);
+        }
+        long heap = usedHeapAfterGc() - before;
+        System.out.printf("%s: %d accounts, %d MB retained, %d bytes/account%n",
+                model, accounts, heap >> 20, heap / accounts);
+
+        // deposits through Account views/objects, as the GUI and DAO paths do
+        AtomicLong maxPauseMs = new AtomicLong();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) gc).addNotificationListener((n, h) -> {
+                if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType())) return;
+                long ms = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData()).getGcInfo().getDuration();
+                maxPauseMs.accumulateAndGet(ms, Math::max);
+            }, null, null);
+        }
+        long gcCount0 = gcCount();
+        long gcTime0 = gcTimeMs();
+        SplittableRandom rnd = new SplittableRandom(42);
+        long ops = 0;
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 10_000; i++) updater.update(EmbeddedDatabase.FIRST_ACCOUNT_ID + rnd.nextInt(accounts));
+            ops += 10_000;
+        }
+        System.out.printf("%s: %d updates in %d s, %d collections, %d ms total GC, %d ms longest collection%n",
+                model, ops, seconds, gcCount() - gcCount0, gcTimeMs() - gcTime0, maxPauseMs.get());
+        Reference.reachabilityFence(keep);
+    }
+
+    private interface Updater {
+        void update(int id) throws DatabaseException;
+    }
+
+    private static Account account(int i) {
+        int id = EmbeddedDatabase.FIRST_ACCOUNT_ID + i;
+        String owner = "Synthetic " + id;
+        BigDecimal balance = new BigDecimal("1000.00");
+        return id % 2 == 0 ? new SavingsAccount(id, owner, balance) : new CurrentAccount(id, owner, balance);
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long gcCount() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) n += gc.getCollectionCount();
+        return n;
+    }
+
+    private static long gcTimeMs() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) n += gc.getCollectionTime();
+        return n;
+    }
+}
@@ -0,0 +1,70 @@
+package atm.bench;
+
+import atm.HashUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PIN hashing as done on every login.
+ * The legacy* benchmarks keep the original implementation (digest lookup per call, String.format per byte,
+ * equalsIgnoreCase) as the baseline for the login-storm comparison; run with -t to simulate many terminals.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HashUtilBenchmark {
+    private int pin = 1000;
+    private final String storedHash = HashUtil.sha256Hex("1234");
+
+    private String nextPin() {
+        pin = pin == 9999 ? 1000 : pin + 1;
+        return Integer.toString(pin);
+    }
+
+    @Benchmark
+    public String sha256Hex() {
+        return HashUtil.sha256Hex(nextPin());
+    }
+
+    @Benchmark
+    public boolean verifyPin() {
+        return HashUtil.matches(nextPin(), storedHash);
+    }
+
+    @Benchmark
+    public String legacySha256Hex() {
+        return legacyHash(nextPin());
+    }
+
+    @Benchmark
+    public boolean legacyVerifyPin() {
+        return legacyHash(nextPin()).equalsIgnoreCase(storedHash);
+    }
+
+    private static String legacyHash(String input) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(input.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not supported", e);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package atm.bench;
+
+import atm.AccountDAO;
+import atm.AuthService;
+import atm.AuthenticationException;
+import atm.ConnectionPool;
+import atm.DBConfig;
+import atm.DatabaseException;
+import atm.HashUtil;
+import atm.InMemoryCache;
+import atm.LatencyHistogram;
+import atm.OperationTimer;
+import atm.ShardedLedger;
+import atm.Transactionable;
+import atm.TransactionExecutor;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless open-loop load test of the ATM workload against the embedded database.
+ * <pre>
+ *   java -Daccounts=10000 -Drate=2000 -Dduration=30 -Dzipf=0.99 -Dbackend=dao \
+ *        -Dmix=login=5,deposit=25,withdraw=25,transfer=35,history=10 \
+ *        -cp benchmarks.jar atm.bench.LoadGenerator
+ * </pre>
+ * Operations are issued on a fixed schedule of {@code rate} per second whether or not earlier ones have
+ * finished, and each latency is measured from its scheduled start, so a stall shows up in the percentiles
+ * instead of silently lowering the offered load (coordinated omission). Clients run on the
+ * {@link TransactionExecutor}, on virtual threads when the JVM has them.
+ * <p>
+ * Other properties: {@code backend} (dao or ledger), {@code mode} (AccountDAO execution mode),
+ * {@code pool} (connections), {@code clients} (concurrent operations), {@code threads} (virtual or platform).
+ * At the end the sum of balances must equal the opening total plus deposits minus withdrawals, and every
+ * account's balance must match its ledger rows and its daily summaries; the exit code is 1 if any check fails.
+ */
+public final class LoadGenerator {
+    enum Op { LOGIN, DEPOSIT, WITHDRAW, TRANSFER, HISTORY }
+
+    private static final String PIN = "1234";
+    private static final BigDecimal OPENING_BALANCE = new BigDecimal("1000.00");
+
+    private final Map<Op, OperationTimer> timers = new EnumMap<>(Op.class);
+    private final LongAdder depositedCents = new LongAdder();
+    private final LongAdder withdrawnCents = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private LoadGenerator() {
+        for (Op op : Op.values()) timers.put(op, new OperationTimer(op.name().toLowerCase(), op.name()));
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(new LoadGenerator().run() ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        int accounts = Integer.getInteger("accounts", 10_000);
+        int rate = Integer.getInteger("rate", 2_000);
+        int duration = Integer.getInteger("duration", 30);
+        double zipfExponent = Double.parseDouble(System.getProperty("zipf", "0.99"));
+        String backend = System.getProperty("backend", "dao");
+        AccountDAO.ExecutionMode mode = AccountDAO.ExecutionMode.valueOf(System.getProperty("mode", DBConfig.EXECUTION_MODE.name()));
+        int poolSize = Integer.getInteger("pool", 16);
+        int clients = Integer.getInteger("clients", 1_000);
+        TransactionExecutor.Backend threads = TransactionExecutor.Backend.valueOf(System.getProperty("threads", "virtual").toUpperCase());
+        Op[] mix = parseMix(System.getProperty("mix", "login=5,deposit=25,withdraw=25,transfer=35,history=10"));
+
+        String url = EmbeddedDatabase.url("load");
+        EmbeddedDatabase.create(url, accounts, OPENING_BALANCE);
+        setPins(url);
+        BigDecimal openingTotal = EmbeddedDatabase.totalBalance(url);
+        Zipf zipf = new Zipf(accounts, zipfExponent);
+        System.out.printf("%d accounts, zipf %.2f (top 1%% of accounts get %.0f%% of picks), %d ops/s for %d s, backend %s%s%n",
+                accounts, zipfExponent, 100 * zipf.headShare(Math.max(1, accounts / 100)), rate, duration, backend,
+                "dao".equals(backend) ? " (" + mode + ")" : "");
+
+        ConnectionPool pool = EmbeddedDatabase.pool(url, poolSize);
+        AccountDAO dao = new AccountDAO(pool, mode);
+        ShardedLedger ledger = "ledger".equals(backend)
+                ? new ShardedLedger(dao, Files.createTempDirectory("atm-load-journal").toString(), DBConfig.LEDGER_PARTITIONS)
+                : null;
+        Transactionable target = ledger != null ? ledger : dao;
+        InMemoryCache cache = new InMemoryCache();
+        dao.addChangeListener(cache);
+        AuthService auth = new AuthService(dao, cache);
+        TransactionExecutor executor = new TransactionExecutor(threads, clients, clients * 4, TransactionExecutor.RejectionPolicy.ABORT);
+        System.out.println("clients on " + executor.getBackend() + " threads");
+
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long total = (long) rate * duration;
+        SplittableRandom random = new SplittableRandom(7);
+        AtomicInteger outstanding = new AtomicInteger();
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        for (long i = 0; i < total; i++) {
+            long intended = start + i * periodNanos;
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                if (wait > 50_000) LockSupport.parkNanos(wait - 20_000);
+                else Thread.onSpinWait();
+            }
+            Op op = mix[random.nextInt(mix.length)];
+            int account = EmbeddedDatabase.FIRST_ACCOUNT_ID + zipf.next(random);
+            int other = EmbeddedDatabase.FIRST_ACCOUNT_ID + zipf.next(random);
+            long cents = 100 + random.nextInt(9_900);
+            outstanding.incrementAndGet();
+            CompletableFuture<Void> f = executor.submit(() -> {
+                execute(op, account, other, cents, intended, target, dao, auth);
+                return null;
+            });
+            f.whenComplete((r, ex) -> {
+                outstanding.decrementAndGet();
+                if (ex != null) rejected.increment();
+            });
+        }
+        while (outstanding.get() > 0) Thread.sleep(10);
+        long elapsed = System.nanoTime() - start;
+        executor.close();
+        if (ledger != null) ledger.close();
+        dao.close();
+        pool.close();
+
+        report(elapsed, total);
+        return checkInvariants(url, openingTotal);
+    }
+
+    private void execute(Op op, int account, int other, long cents, long intended, Transactionable target,
+                         AccountDAO dao, AuthService auth) {
+        OperationTimer timer = timers.get(op);
+        BigDecimal amount = BigDecimal.valueOf(cents, 2);
+        try {
+            switch (op) {
+                case LOGIN:
+                    auth.authenticate("load", account, PIN);
+                    break;
+                case DEPOSIT:
+                    target.deposit(account, amount);
+                    depositedCents.add(cents);
+                    break;
+                case WITHDRAW:
+                    target.withdraw(account, amount);
+                    withdrawnCents.add(cents);
+                    break;
+                case TRANSFER:
+                    // the hottest account often draws itself; send to a neighbour instead
+                    if (account == other) other = account == EmbeddedDatabase.FIRST_ACCOUNT_ID ? account + 1 : account - 1;
+                    target.transfer(account, other, amount);
+                    break;
+                case HISTORY:
+                    dao.getTransactionPage(account, null, DBConfig.HISTORY_PAGE_SIZE);
+                    break;
+            }
+            timer.success(intended);
+        } catch (DatabaseException e) {
+            timer.failure(intended, e);
+        } catch (AuthenticationException e) {
+            timer.record(intended, OperationTimer.Outcome.INVALID);
+        }
+    }
+
+    private static Op[] parseMix(String spec) {
+        Op[] out = new Op[100];
+        int n = 0;
+        for (String part : spec.split(",")) {
+            String[] kv = part.split("=");
+            Op op = Op.valueOf(kv[0].trim().toUpperCase());
+            for (int i = Integer.parseInt(kv[1].trim()); i > 0 && n < out.length; i--) out[n++] = op;
+        }
+        if (n == 0) throw new IllegalArgumentException("Empty operation mix: " + spec);
+        return Arrays.copyOf(out, n);
+    }
+
+    private static void setPins(String url) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, EmbeddedDatabase.USER, EmbeddedDatabase.PASS);
+             PreparedStatement ps = conn.prepareStatement("UPDATE accounts SET pin_hash = ? WHERE account_id >= ?")) {
+            ps.setString(1, HashUtil.sha256Hex(PIN));
+            ps.setInt(2, EmbeddedDatabase.FIRST_ACCOUNT_ID);
+            ps.executeUpdate();
+        }
+    }
+
+    private void report(long elapsedNanos, long scheduled) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%n%-9s %9s %9s %9s %9s %9s %9s %9s %9s%n",
+                "op", "ok", "failed", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        long done = 0;
+        for (Op op : Op.values()) {
+            OperationTimer t = timers.get(op);
+            LatencyHistogram h = t.getLatency();
+            long ok = t.getCount(OperationTimer.Outcome.SUCCESS);
+            long failed = h.getCount() - ok;
+            done += h.getCount();
+            System.out.printf("%-9s %9d %9d %9.0f %9.2f %9.2f %9.2f %9.2f %9.2f%n", op.name().toLowerCase(), ok, failed,
+                    h.getCount() / seconds, h.getValueAtPercentileMillis(50), h.getValueAtPercentileMillis(90),
+                    h.getValueAtPercentileMillis(99), h.getValueAtPercentileMillis(99.9), h.getMaxNanos() / 1e6);
+            for (OperationTimer.Outcome o : OperationTimer.Outcome.values()) {
+                if (o != OperationTimer.Outcome.SUCCESS && t.getCount(o) > 0) {
+                    System.out.printf("          %s: %d%n", o.name().toLowerCase(), t.getCount(o));
+                }
+            }
+        }
+        System.out.printf("%nscheduled %d, completed %d, rejected by the executor %d, %.0f ops/s over %.1f s%n",
+                scheduled, done, rejected.sum(), done / seconds, seconds);
+    }
+
+    private boolean checkInvariants(String url, BigDecimal openingTotal) throws SQLException {
+        BigDecimal expected = openingTotal.add(BigDecimal.valueOf(depositedCents.sum() - withdrawnCents.sum(), 2));
+        BigDecimal actual = EmbeddedDatabase.totalBalance(url);
+        boolean conserved = expected.compareTo(actual) == 0;
+        System.out.printf("balance total: expected %s, found %s -> %s%n", expected, actual, conserved ? "OK" : "FAILED");
+
+        // every balance must equal its opening balance plus its own ledger rows
+        String sql = "SELECT COUNT(*) FROM accounts a LEFT JOIN (SELECT account_id, SUM(CASE WHEN type IN ('WITHDRAW', 'TRANSFER_OUT')"
+                + " THEN -amount ELSE amount END) AS delta FROM transactions GROUP BY account_id) t ON t.account_id = a.account_id"
+                + " WHERE a.account_id >= ? AND a.balance <> ? + COALESCE(t.delta, 0)";
+        int mismatched;
+        try (Connection conn = DriverManager.getConnection(url, EmbeddedDatabase.USER, EmbeddedDatabase.PASS);
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, EmbeddedDatabase.FIRST_ACCOUNT_ID);
+            ps.setBigDecimal(2, OPENING_BALANCE);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                mismatched = rs.getInt(1);
+            }
+        }
+        System.out.printf("accounts whose balance disagrees with their ledger: %d -> %s%n", mismatched, mismatched == 0 ? "OK" : "FAILED");
+
+        // the daily rollups must count the same rows, net to the same balance and close on the current balance
+        String rollups = "SELECT COUNT(*) FROM accounts a"
+                + " LEFT JOIN (SELECT account_id, SUM(txn_count) AS n, SUM(credit_total - debit_total) AS net, MAX(summary_date) AS last_day"
+                + " FROM account_daily_summary GROUP BY account_id) s ON s.account_id = a.account_id"
+                + " LEFT JOIN (SELECT account_id, COUNT(*) AS n FROM transactions GROUP BY account_id) t ON t.account_id = a.account_id"
+                + " LEFT JOIN account_daily_summary d ON d.account_id = a.account_id AND d.summary_date = s.last_day"
+                + " WHERE a.account_id >= ? AND (COALESCE(s.n, 0) <> COALESCE(t.n, 0) OR a.balance <> ? + COALESCE(s.net, 0)"
+                + " OR d.closing_balance <> a.balance)";
+        int stale;
+        try (Connection conn = DriverManager.getConnection(url, EmbeddedDatabase.USER, EmbeddedDatabase.PASS);
+             PreparedStatement ps = conn.prepareStatement(rollups)) {
+            ps.setInt(1, EmbeddedDatabase.FIRST_ACCOUNT_ID);
+            ps.setBigDecimal(2, OPENING_BALANCE);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                stale = rs.getInt(1);
+            }
+        }
+        System.out.printf("accounts whose daily summaries disagree with their ledger: %d -> %s%n", stale, stale == 0 ? "OK" : "FAILED");
+        return conserved && mismatched == 0 && stale == 0;
+    }
+}
@@ -0,0 +1,26 @@
+package atm.bench;
+
+import java.util.SplittableRandom;
+
+/**
+ * How benchmark and load-test clients spread their operations over the accounts.
+ */
+public enum Skew {
+    UNIFORM {
+        @Override
+        int pick(SplittableRandom random, int accounts) {
+            return random.nextInt(accounts);
+        }
+    },
+    // 90% of operations hit the first 1% of accounts
+    HOT {
+        @Override
+        int pick(SplittableRandom random, int accounts) {
+            int hot = Math.max(1, accounts / 100);
+            return random.nextInt(10) < 9 ? random.nextInt(hot) : random.nextInt(accounts);
+        }
+    };
+
+    /** Returns an account index in {@code [0, accounts)}. */
+    abstract int pick(SplittableRandom random, int accounts);
+}
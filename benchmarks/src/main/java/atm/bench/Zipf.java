@@ -0,0 +1,33 @@
+package atm.bench;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Zipf-distributed account picker: index k is chosen with probability proportional to 1/(k+1)^exponent.
+ * Exponent 0 is uniform; around 1 a handful of accounts take a large share of the traffic.
+ */
+final class Zipf {
+    private final double[] cdf;
+
+    Zipf(int n, double exponent) {
+        cdf = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cdf[k] = sum;
+        }
+        for (int k = 0; k < n; k++) cdf[k] /= sum;
+    }
+
+    /** Returns an index in {@code [0, n)}. */
+    int next(SplittableRandom random) {
+        int i = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(cdf.length - 1, i >= 0 ? i : -i - 1);
+    }
+
+    /** Share of draws that land on the first {@code k} indexes. */
+    double headShare(int k) {
+        return cdf[Math.min(k, cdf.length) - 1];
+    }
+}
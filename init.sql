@@ -16,9 +16,64 @@
       type VARCHAR(50),
       amount DECIMAL(15,2),
       remark VARCHAR(255),
+      INDEX idx_transactions_account_time (account_id, timestamp, id),
       FOREIGN KEY (account_id) REFERENCES accounts(account_id)
     );
 
+    -- databases created before the history index was added to the table definition get it here
+    -- (MySQL has no CREATE INDEX IF NOT EXISTS, so the statement is only prepared when the index is missing)
+    SET @ddl = IF((SELECT COUNT(*) FROM information_schema.statistics
+                   WHERE table_schema = DATABASE() AND table_name = 'transactions'
+                     AND index_name = 'idx_transactions_account_time') = 0,
+                  'CREATE INDEX idx_transactions_account_time ON transactions (account_id, timestamp, id)',
+                  'DO 0');
+    PREPARE create_history_index FROM @ddl;
+    EXECUTE create_history_index;
+    DEALLOCATE PREPARE create_history_index;
+
+    -- per-account daily rollup of the transactions table, maintained in the same transaction as every
+    -- ledger insert (closing_balance is the account balance after the day's last commit)
+    CREATE TABLE IF NOT EXISTS account_daily_summary (
+      account_id INT NOT NULL,
+      summary_date DATE NOT NULL,
+      txn_count INT NOT NULL,
+      debit_count INT NOT NULL,
+      credit_count INT NOT NULL,
+      debit_total DECIMAL(15,2) NOT NULL,
+      credit_total DECIMAL(15,2) NOT NULL,
+      closing_balance DECIMAL(15,2) NOT NULL,
+      PRIMARY KEY (account_id, summary_date),
+      FOREIGN KEY (account_id) REFERENCES accounts(account_id)
+    );
+
+    -- rolls up the history that predates the table. Each day closes at the current balance less the net of every
+    -- later day. Days that already have a rollup are skipped, so run it before the application starts writing and
+    -- re-running it adds nothing. Needs MySQL 8.0 for the window function.
+    INSERT INTO account_daily_summary(account_id, summary_date, txn_count, debit_count, credit_count,
+                                      debit_total, credit_total, closing_balance)
+    SELECT h.account_id, h.txn_date, h.txn_count, h.debit_count, h.credit_count, h.debit_total, h.credit_total,
+           h.balance - h.later_net
+    FROM (SELECT d.*, a.balance,
+                 COALESCE(SUM(d.credit_total - d.debit_total) OVER (PARTITION BY d.account_id ORDER BY d.txn_date DESC
+                          ROWS BETWEEN UNBOUNDED PRECEDING AND 1 PRECEDING), 0) AS later_net
+          FROM (SELECT account_id, CAST(timestamp AS DATE) AS txn_date, COUNT(*) AS txn_count,
+                       SUM(CASE WHEN type IN ('WITHDRAW', 'TRANSFER_OUT') THEN 1 ELSE 0 END) AS debit_count,
+                       SUM(CASE WHEN type IN ('WITHDRAW', 'TRANSFER_OUT') THEN 0 ELSE 1 END) AS credit_count,
+                       SUM(CASE WHEN type IN ('WITHDRAW', 'TRANSFER_OUT') THEN amount ELSE 0 END) AS debit_total,
+                       SUM(CASE WHEN type IN ('WITHDRAW', 'TRANSFER_OUT') THEN 0 ELSE amount END) AS credit_total
+                FROM transactions
+                GROUP BY account_id, CAST(timestamp AS DATE)) d
+          JOIN accounts a ON a.account_id = d.account_id) h
+    WHERE NOT EXISTS (SELECT 1 FROM account_daily_summary s
+                      WHERE s.account_id = h.account_id AND s.summary_date = h.txn_date);
+
+    -- last journal sequence number each in-memory ledger journal has applied here, advanced in the same
+    -- transaction as the replayed rows so a batch is never applied twice
+    CREATE TABLE IF NOT EXISTS ledger_replay_state (
+      journal_id VARCHAR(64) PRIMARY KEY,
+      applied_seq BIGINT NOT NULL
+    );
+
     -- sample data with PIN hashes (PINs: 1001->1234, 1002->2222, 1003->3333)
     INSERT INTO accounts(account_id, owner_name, type, balance, pin_hash) VALUES
     (1001, 'Dhruv Mittal', 'SAVINGS', 5000.00, '03ac674216f3e15c761ee1a5e255f067953623c8b388b4459e13f978d7c846f4'),
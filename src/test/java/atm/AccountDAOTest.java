@@ -0,0 +1,148 @@
+package atm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AccountDAOTest {
+    private static final int SAVINGS = 900_400;
+    private static final int CURRENT = 900_401;
+    private static final int MISSING = 900_499;
+
+    private final List<ConnectionPool> pools = new ArrayList<>();
+    private final List<AccountDAO> daos = new ArrayList<>();
+    private String url;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        url = newDatabase();
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (AccountDAO dao : daos) dao.close();
+        for (ConnectionPool pool : pools) pool.close();
+    }
+
+    private String newDatabase() throws Exception {
+        String u = TestDatabase.create("dao" + System.nanoTime());
+        TestDatabase.addAccount(u, SAVINGS, "SAVINGS", new BigDecimal("1000.00"));
+        TestDatabase.addAccount(u, CURRENT, "CURRENT", new BigDecimal("0.00"));
+        return u;
+    }
+
+    private AccountDAO dao(String u, AccountDAO.ExecutionMode mode) {
+        ConnectionPool pool = TestDatabase.pool(u);
+        pools.add(pool);
+        AccountDAO dao = new AccountDAO(pool, mode);
+        daos.add(dao);
+        return dao;
+    }
+
+    private interface Call {
+        void run() throws DatabaseException;
+    }
+
+    private static DatabaseException.Reason rejection(Call call) {
+        return assertThrows(DatabaseException.class, call::run).getReason();
+    }
+
+    private static void assertBalance(String u, int accountId, String expected) throws Exception {
+        assertEquals(0, new BigDecimal(expected).compareTo(TestDatabase.balance(u, accountId)),
+                "balance of " + accountId);
+    }
+
+    @Test
+    void savingsWithdrawalStopsAtTheMinimumBalance() throws Exception {
+        AccountDAO dao = dao(url, AccountDAO.ExecutionMode.CONDITIONAL_UPDATE);
+
+        dao.withdraw(SAVINGS, new BigDecimal("900.00"));
+        assertEquals(DatabaseException.Reason.INSUFFICIENT_FUNDS, rejection(() -> dao.withdraw(SAVINGS, new BigDecimal("0.01"))));
+
+        assertBalance(url, SAVINGS, "100.00");
+        assertEquals(1, TestDatabase.transactionCount(url, SAVINGS));
+    }
+
+    @Test
+    void currentWithdrawalStopsAtTheOverdraftLimit() throws Exception {
+        AccountDAO dao = dao(url, AccountDAO.ExecutionMode.CONDITIONAL_UPDATE);
+
+        dao.withdraw(CURRENT, new BigDecimal("1000.00"));
+        assertEquals(DatabaseException.Reason.INSUFFICIENT_FUNDS, rejection(() -> dao.withdraw(CURRENT, new BigDecimal("0.01"))));
+
+        assertBalance(url, CURRENT, "-1000.00");
+    }
+
+    @Test
+    void missingAccountIsNotFoundRatherThanShortOfFunds() throws Exception {
+        AccountDAO dao = dao(url, AccountDAO.ExecutionMode.CONDITIONAL_UPDATE);
+        BigDecimal amount = new BigDecimal("5000.00");
+
+        assertEquals(DatabaseException.Reason.NOT_FOUND, rejection(() -> dao.withdraw(MISSING, amount)));
+        assertEquals(DatabaseException.Reason.NOT_FOUND, rejection(() -> dao.deposit(MISSING, amount)));
+        assertEquals(DatabaseException.Reason.INSUFFICIENT_FUNDS, rejection(() -> dao.withdraw(SAVINGS, amount)));
+        assertBalance(url, SAVINGS, "1000.00");
+    }
+
+    @ParameterizedTest
+    @EnumSource(AccountDAO.ExecutionMode.class)
+    void rejectsAmountsThatAreNotPositiveCents(AccountDAO.ExecutionMode mode) throws Exception {
+        AccountDAO dao = dao(url, mode);
+        for (BigDecimal amount : new BigDecimal[]{new BigDecimal("-100"), BigDecimal.ZERO, new BigDecimal("1.001"), null}) {
+            assertEquals(DatabaseException.Reason.INVALID, rejection(() -> dao.withdraw(SAVINGS, amount)));
+            assertEquals(DatabaseException.Reason.INVALID, rejection(() -> dao.deposit(SAVINGS, amount)));
+            assertEquals(DatabaseException.Reason.INVALID, rejection(() -> dao.transfer(SAVINGS, CURRENT, amount)));
+        }
+        assertBalance(url, SAVINGS, "1000.00");
+        assertBalance(url, CURRENT, "0.00");
+        assertEquals(0, TestDatabase.transactionCount(url, SAVINGS));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = AccountDAO.ExecutionMode.class, names = {"CONDITIONAL_UPDATE", "GROUP_COMMIT"})
+    void sameOutcomesAsTheLockingMode(AccountDAO.ExecutionMode mode) throws Exception {
+        String lockingUrl = url;
+        String otherUrl = newDatabase();
+
+        assertEquals(run(dao(lockingUrl, AccountDAO.ExecutionMode.LOCKING)), run(dao(otherUrl, mode)));
+        for (int id : new int[]{SAVINGS, CURRENT}) {
+            assertEquals(0, TestDatabase.balance(lockingUrl, id).compareTo(TestDatabase.balance(otherUrl, id)));
+            assertEquals(TestDatabase.transactionCount(lockingUrl, id), TestDatabase.transactionCount(otherUrl, id));
+        }
+    }
+
+    // a fixed mix of accepted and rejected operations; returns each outcome in order
+    private static List<String> run(AccountDAO dao) {
+        List<Call> calls = new ArrayList<>();
+        calls.add(() -> dao.withdraw(SAVINGS, new BigDecimal("899.99")));
+        calls.add(() -> dao.withdraw(SAVINGS, new BigDecimal("0.02")));
+        calls.add(() -> dao.withdraw(SAVINGS, new BigDecimal("0.01")));
+        calls.add(() -> dao.deposit(CURRENT, new BigDecimal("10.50")));
+        calls.add(() -> dao.withdraw(CURRENT, new BigDecimal("1010.50")));
+        calls.add(() -> dao.withdraw(CURRENT, new BigDecimal("0.01")));
+        calls.add(() -> dao.transfer(SAVINGS, CURRENT, new BigDecimal("1.00")));
+        calls.add(() -> dao.transfer(CURRENT, SAVINGS, new BigDecimal("1.00")));
+        calls.add(() -> dao.withdraw(MISSING, new BigDecimal("1.00")));
+        calls.add(() -> dao.deposit(MISSING, new BigDecimal("1.00")));
+        calls.add(() -> dao.withdraw(SAVINGS, new BigDecimal("1.00")));
+        List<String> outcomes = new ArrayList<>();
+        for (Call c : calls) {
+            try {
+                c.run();
+                outcomes.add("OK");
+            } catch (DatabaseException e) {
+                outcomes.add(e.getReason().name());
+            }
+        }
+        return outcomes;
+    }
+}
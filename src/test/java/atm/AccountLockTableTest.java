@@ -0,0 +1,124 @@
+package atm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccountLockTableTest {
+    private static final int HOT_A = 900_600;
+    private static final int HOT_B = 900_601;
+    private static final BigDecimal OPENING = new BigDecimal("500.00");
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 100;
+
+    private String url;
+    private ConnectionPool pool;
+    private AccountDAO dao;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        url = TestDatabase.create("locks" + System.nanoTime());
+        TestDatabase.addAccount(url, HOT_A, "SAVINGS", OPENING);
+        TestDatabase.addAccount(url, HOT_B, "CURRENT", OPENING);
+        pool = TestDatabase.pool(url);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (dao != null) dao.close();
+        pool.close();
+    }
+
+    @Test
+    void lockBothTakesASharedStripeOnce() throws Exception {
+        AccountLockTable table = new AccountLockTable(1);
+        try (AccountLockTable.Held held = table.lockBoth(HOT_A, HOT_B)) {
+            assertEquals(1, table.getTotalAcquisitions());
+        }
+        try (AccountLockTable.Held held = table.lock(HOT_A)) {
+            assertEquals(0, table.getTotalContendedAcquisitions());
+        }
+    }
+
+    @Test
+    void crossingLockBothCallsDoNotDeadlock() throws Exception {
+        AccountLockTable table = new AccountLockTable(64);
+        assertNotEquals(table.stripeOf(HOT_A), table.stripeOf(HOT_B));
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            CountDownLatch go = new CountDownLatch(1);
+            Future<?> ab = threads.submit(() -> lockRepeatedly(table, go, HOT_A, HOT_B));
+            Future<?> ba = threads.submit(() -> lockRepeatedly(table, go, HOT_B, HOT_A));
+            go.countDown();
+            ab.get(10, TimeUnit.SECONDS);
+            ba.get(10, TimeUnit.SECONDS);
+        } finally {
+            threads.shutdown();
+        }
+        assertEquals(20_000, table.getTotalAcquisitions());
+    }
+
+    private static Void lockRepeatedly(AccountLockTable table, CountDownLatch go, int first, int second) throws Exception {
+        go.await();
+        for (int i = 0; i < 5_000; i++) {
+            try (AccountLockTable.Held held = table.lockBoth(first, second)) {
+                Thread.onSpinWait();
+            }
+        }
+        return null;
+    }
+
+    @ParameterizedTest
+    @EnumSource(AccountDAO.ExecutionMode.class)
+    void crossingTransfersOnHotAccountsPreserveTheTotal(AccountDAO.ExecutionMode mode) throws Exception {
+        dao = new AccountDAO(pool, mode);
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        int[] applied = new int[THREADS];
+        try {
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                done.add(threads.submit(() -> {
+                    go.await();
+                    for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                        boolean forward = (thread + i) % 2 == 0;
+                        try {
+                            dao.transfer(forward ? HOT_A : HOT_B, forward ? HOT_B : HOT_A, new BigDecimal("7.50"));
+                            applied[thread]++;
+                        } catch (DatabaseException e) {
+                            if (e.getReason() != DatabaseException.Reason.INSUFFICIENT_FUNDS) throw e;
+                        }
+                    }
+                    return null;
+                }));
+            }
+            go.countDown();
+            for (Future<?> f : done) f.get(60, TimeUnit.SECONDS);
+        } finally {
+            threads.shutdown();
+        }
+
+        int transfers = 0;
+        for (int n : applied) transfers += n;
+        assertTrue(transfers > 0);
+        BigDecimal total = TestDatabase.balance(url, HOT_A).add(TestDatabase.balance(url, HOT_B));
+        assertEquals(0, OPENING.add(OPENING).compareTo(total), "total " + total);
+        assertEquals(2 * transfers, TestDatabase.transactionCount(url, HOT_A) + TestDatabase.transactionCount(url, HOT_B));
+    }
+}
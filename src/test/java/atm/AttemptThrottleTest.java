@@ -0,0 +1,78 @@
+package atm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AttemptThrottleTest {
+    private final AtomicLong clock = new AtomicLong(1_000);
+
+    private AttemptThrottle<String> throttle(int maxKeys) {
+        return new AttemptThrottle<>(maxKeys, 3, 60, clock::get);
+    }
+
+    @Test
+    void blocksOnceTheLimitIsReached() {
+        AttemptThrottle<String> t = throttle(16);
+        for (int i = 0; i < 3; i++) assertTrue(t.tryAcquire("a"));
+
+        assertFalse(t.tryAcquire("a"));
+        assertTrue(t.isBlocked("a"));
+        assertEquals(3, t.getFailures("a"));
+    }
+
+    @Test
+    void releasedAttemptsDoNotCount() {
+        AttemptThrottle<String> t = throttle(16);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(t.tryAcquire("a"));
+            t.release("a");
+        }
+        assertEquals(0, t.getFailures("a"));
+    }
+
+    @Test
+    void lockoutEndsWhenTheWindowHasPassed() {
+        AttemptThrottle<String> t = throttle(16);
+        for (int i = 0; i < 3; i++) t.tryAcquire("a");
+
+        clock.addAndGet(59);
+        assertFalse(t.tryAcquire("a"));
+        clock.addAndGet(1);
+        assertFalse(t.isBlocked("a"));
+        assertTrue(t.tryAcquire("a"));
+        assertEquals(1, t.getFailures("a"));
+    }
+
+    @Test
+    void keysAreCountedSeparately() {
+        AttemptThrottle<String> t = throttle(16);
+        // equal hash codes must not share a counter
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        for (int i = 0; i < 3; i++) t.tryAcquire("Aa");
+
+        assertTrue(t.isBlocked("Aa"));
+        assertFalse(t.isBlocked("BB"));
+        assertTrue(t.tryAcquire("BB"));
+        t.reset("BB");
+        assertTrue(t.isBlocked("Aa"));
+    }
+
+    @Test
+    void fullMapKeepsLiveCountersAndRefusesNewKeys() {
+        AttemptThrottle<String> t = throttle(2);
+        for (int i = 0; i < 3; i++) t.tryAcquire("victim");
+        t.tryAcquire("other");
+
+        assertFalse(t.tryAcquire("flood"));
+        assertTrue(t.isBlocked("victim"));
+        assertTrue(t.tryAcquire("other"), "keys already counted still work");
+
+        clock.addAndGet(60);
+        assertTrue(t.tryAcquire("flood"), "expired counters make room");
+    }
+}
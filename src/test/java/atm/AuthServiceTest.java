@@ -0,0 +1,105 @@
+package atm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AuthServiceTest {
+    // init.sql sample accounts and their PINs
+    private static final int ACCOUNT = 1001;
+    private static final String PIN = "1234";
+    private static final int OTHER_ACCOUNT = 1002;
+    private static final String OTHER_PIN = "2222";
+    private static final String WRONG_PIN = "9999";
+
+    private ConnectionPool pool;
+    private AuthService auth;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        pool = TestDatabase.pool(TestDatabase.create("auth" + System.nanoTime()));
+        AccountDAO dao = new AccountDAO(pool, AccountDAO.ExecutionMode.CONDITIONAL_UPDATE);
+        auth = new AuthService(dao, new InMemoryCache());
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    private String failure(String terminal, int accountId, String pin) {
+        return assertThrows(AuthenticationException.class, () -> auth.authenticate(terminal, accountId, pin)).getMessage();
+    }
+
+    @Test
+    void accountIsLockedAfterTheFailureLimit() throws Exception {
+        for (int i = 0; i < DBConfig.AUTH_MAX_FAILURES_PER_ACCOUNT; i++) {
+            assertEquals("Invalid PIN", failure("t" + i, ACCOUNT, WRONG_PIN));
+        }
+        assertEquals("Too many failed attempts, try again later", failure("fresh", ACCOUNT, PIN));
+        assertEquals(1, auth.getThrottledCount());
+        auth.authenticate("fresh", OTHER_ACCOUNT, OTHER_PIN);
+    }
+
+    @Test
+    void correctPinClearsTheAccountCount() throws Exception {
+        for (int round = 0; round < 3; round++) {
+            for (int i = 1; i < DBConfig.AUTH_MAX_FAILURES_PER_ACCOUNT; i++) failure("t", ACCOUNT, WRONG_PIN);
+            auth.authenticate("t", ACCOUNT, PIN);
+        }
+        assertEquals(0, auth.getThrottledCount());
+    }
+
+    @Test
+    void concurrentGuessesStopAtTheLimit() throws Exception {
+        int guesses = 50;
+        ExecutorService threads = Executors.newFixedThreadPool(16);
+        try {
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < guesses; i++) {
+                String terminal = "t" + i;
+                results.add(threads.submit(() -> {
+                    go.await();
+                    return failure(terminal, ACCOUNT, WRONG_PIN);
+                }));
+            }
+            go.countDown();
+            for (Future<String> f : results) f.get();
+        } finally {
+            threads.shutdown();
+        }
+
+        assertEquals(DBConfig.AUTH_MAX_FAILURES_PER_ACCOUNT, auth.getFailureCount());
+        assertEquals(guesses - DBConfig.AUTH_MAX_FAILURES_PER_ACCOUNT, auth.getThrottledCount());
+    }
+
+    @Test
+    void terminalsAreThrottledSeparately() throws Exception {
+        // same hash code, different terminals
+        String attacker = "Aa";
+        String neighbour = "BB";
+        for (int i = 0; i < DBConfig.AUTH_MAX_FAILURES_PER_TERMINAL; i++) {
+            assertEquals("Account not found", failure(attacker, 990_000 + i, PIN));
+        }
+
+        assertEquals("Too many failed attempts, try again later", failure(attacker, ACCOUNT, PIN));
+        auth.authenticate(neighbour, ACCOUNT, PIN);
+    }
+
+    @Test
+    void successfulLoginsDoNotCountAgainstTheTerminal() throws Exception {
+        for (int i = 0; i < DBConfig.AUTH_MAX_FAILURES_PER_TERMINAL + 5; i++) auth.authenticate("t", ACCOUNT, PIN);
+        assertEquals(0, auth.getThrottledCount());
+    }
+}
@@ -0,0 +1,79 @@
+package atm;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CompactAccountStoreTest {
+    private static final int ID = 42;
+
+    private static Account savings(String balance) {
+        return new SavingsAccount(ID, "Test", new BigDecimal(balance));
+    }
+
+    @Test
+    void loadRacingAnInvalidationIsNotInstalled() throws Exception {
+        CompactAccountStore store = new CompactAccountStore(16);
+        store.put(savings("100.00"));
+        store.accountChanged(ID);
+
+        Account a = store.getOrLoad(ID, id -> {
+            store.accountChanged(ID); // a commit lands while the old balance is being read
+            return savings("100.00");
+        });
+
+        assertEquals(0, new BigDecimal("100.00").compareTo(a.getBalance()));
+        assertNull(store.get(ID));
+        assertEquals(0, new BigDecimal("150.00").compareTo(store.getOrLoad(ID, id -> savings("150.00")).getBalance()));
+    }
+
+    @Test
+    void firstLoadRacingAnInvalidationIsNotInstalled() throws Exception {
+        CompactAccountStore store = new CompactAccountStore(16);
+
+        Account a = store.getOrLoad(ID, id -> {
+            store.accountChanged(ID);
+            return savings("100.00");
+        });
+
+        assertEquals(0, new BigDecimal("100.00").compareTo(a.getBalance()));
+        assertNull(store.get(ID));
+    }
+
+    @Test
+    void putDoesNotOverwriteACurrentBalance() throws Exception {
+        CompactAccountStore store = new CompactAccountStore(16);
+        store.put(savings("100.00"));
+        store.get(ID).deposit(new BigDecimal("5.00"));
+
+        store.put(savings("100.00"));
+
+        assertEquals(0, new BigDecimal("105.00").compareTo(store.get(ID).getBalance()));
+    }
+
+    @Test
+    void viewKeepsItsBalanceAfterInvalidation() throws Exception {
+        CompactAccountStore store = new CompactAccountStore(16);
+        store.put(savings("100.00"));
+        Account view = store.get(ID);
+
+        store.accountChanged(ID);
+
+        assertEquals(0, new BigDecimal("100.00").compareTo(view.getBalance()));
+    }
+
+    @Test
+    void fullStoreStillReturnsNewAccounts() throws Exception {
+        CompactAccountStore store = new CompactAccountStore(1);
+        store.put(savings("100.00"));
+
+        Account other = store.getOrLoad(ID + 1, id -> new CurrentAccount(id, "Other", new BigDecimal("5.00")));
+
+        assertEquals(0, new BigDecimal("5.00").compareTo(other.getBalance()));
+        assertNull(store.get(ID + 1));
+        assertEquals(1, store.size());
+    }
+}
@@ -0,0 +1,111 @@
+package atm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionPoolTest {
+    private static final int ACCOUNT = 900_300;
+
+    private String url;
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        url = TestDatabase.create("pool" + System.nanoTime());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) pool.close();
+    }
+
+    @Test
+    void closeReturnsTheConnectionOnce() throws Exception {
+        pool = new ConnectionPool(url, TestDatabase.USER, TestDatabase.PASS, 2, 0, 60_000L, 50L, 0L);
+        Connection c = pool.getConnection();
+        assertEquals(1, pool.getActiveCount());
+
+        c.close();
+        c.close();
+
+        assertTrue(c.isClosed());
+        assertThrows(SQLException.class, c::createStatement);
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(1, pool.getIdleCount());
+        // a second close must not hand back a second permit
+        try (Connection a = pool.getConnection(); Connection b = pool.getConnection()) {
+            assertThrows(SQLTimeoutException.class, pool::getConnection);
+        }
+        assertEquals(2, pool.getCreatedCount());
+    }
+
+    @Test
+    void returnedConnectionIsReusedWithoutItsOpenTransaction() throws Exception {
+        pool = new ConnectionPool(url, TestDatabase.USER, TestDatabase.PASS, 1, 0, 60_000L, 1_000L, 0L);
+        try (Connection c = pool.getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "INSERT INTO accounts(account_id, owner_name, type, balance) VALUES (?, 'Leak', 'SAVINGS', 1.00)")) {
+            c.setAutoCommit(false);
+            ps.setInt(1, ACCOUNT);
+            ps.executeUpdate();
+        }
+        try (Connection c = pool.getConnection()) {
+            assertTrue(c.getAutoCommit());
+        }
+        assertEquals(1, pool.getCreatedCount());
+        assertNull(TestDatabase.balance(url, ACCOUNT));
+    }
+
+    @Test
+    void leakIsReportedOncePerBorrow() throws Exception {
+        pool = new ConnectionPool(url, TestDatabase.USER, TestDatabase.PASS, 2, 0, 60_000L, 1_000L, 1L);
+        try (Connection c = pool.getConnection()) {
+            Thread.sleep(20);
+            pool.housekeep();
+            pool.housekeep();
+            assertEquals(1, pool.getLeakCount());
+        }
+        pool.housekeep();
+        assertEquals(1, pool.getLeakCount());
+    }
+
+    @Test
+    void housekeepingRefillsToMinIdle() throws Exception {
+        pool = new ConnectionPool(url, TestDatabase.USER, TestDatabase.PASS, 4, 2, 60_000L, 1_000L, 0L);
+        assertEquals(0, pool.getIdleCount());
+
+        pool.housekeep();
+
+        assertEquals(2, pool.getIdleCount());
+        assertEquals(2, pool.getCreatedCount());
+    }
+
+    @Test
+    void housekeepingEvictsIdleConnectionsDownToMinIdle() throws Exception {
+        pool = new ConnectionPool(url, TestDatabase.USER, TestDatabase.PASS, 4, 1, 1L, 1_000L, 0L);
+        Connection a = pool.getConnection();
+        Connection b = pool.getConnection();
+        Connection c = pool.getConnection();
+        a.close();
+        b.close();
+        c.close();
+        Thread.sleep(20);
+
+        pool.housekeep();
+
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(2, pool.getEvictedCount());
+        assertEquals(1, pool.getTotalCount());
+    }
+}
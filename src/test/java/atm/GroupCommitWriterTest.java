@@ -0,0 +1,152 @@
+package atm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GroupCommitWriterTest {
+    private static final BigDecimal ONE = new BigDecimal("1.00");
+
+    private ConnectionPool pool;
+    private TransferEngine engine;
+    private GroupCommitWriter writer;
+    private final List<Integer> writes = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() throws Exception {
+        pool = TestDatabase.pool(TestDatabase.create("groupcommit" + System.nanoTime()));
+        engine = new TransferEngine(pool, 1, 0L, 0L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (writer != null) writer.close();
+        pool.close();
+    }
+
+    // one flush per call to the row writer, recorded by its row count
+    private GroupCommitWriter writer(int maxBatch, GroupCommitWriter.RowWriter rowWriter) {
+        writer = new GroupCommitWriter(engine, (conn, ids) -> { }, rowWriter, maxBatch, 1_000L);
+        return writer;
+    }
+
+    private GroupCommitWriter writer(int maxBatch) {
+        return writer(maxBatch, (conn, rows) -> writes.add(rows.size()));
+    }
+
+    private static GroupCommitWriter.Operation ledgerRow(int accountId) {
+        return conn -> Collections.singletonList(new LedgerEntry(accountId, "DEPOSIT", ONE, "test"));
+    }
+
+    private static void awaitSuccess(CompletableFuture<Void> f) throws Exception {
+        f.get(5, TimeUnit.SECONDS);
+    }
+
+    private static DatabaseException awaitFailure(CompletableFuture<Void> f) {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> f.get(5, TimeUnit.SECONDS));
+        return assertInstanceOf(DatabaseException.class, e.getCause());
+    }
+
+    @Test
+    void operationsSubmittedTogetherShareOneCommit() throws Exception {
+        GroupCommitWriter w = writer(4);
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) results.add(w.submit(ledgerRow(1001), 1001));
+        for (CompletableFuture<Void> f : results) awaitSuccess(f);
+
+        assertEquals(1, w.getBatchCount());
+        assertEquals(4.0, w.getAverageBatchSize());
+        assertEquals(Collections.singletonList(4), writes);
+    }
+
+    @Test
+    void rejectedOperationFailsAloneInItsBatch() throws Exception {
+        GroupCommitWriter w = writer(3);
+        CompletableFuture<Void> first = w.submit(ledgerRow(1001), 1001);
+        CompletableFuture<Void> rejected = w.submit(conn -> {
+            throw new DatabaseException("Insufficient funds", null, DatabaseException.Reason.INSUFFICIENT_FUNDS);
+        }, 1002);
+        CompletableFuture<Void> third = w.submit(ledgerRow(1003), 1003);
+
+        awaitSuccess(first);
+        awaitSuccess(third);
+        assertEquals(DatabaseException.Reason.INSUFFICIENT_FUNDS, awaitFailure(rejected).getReason());
+        assertEquals(1, w.getBatchCount());
+        assertEquals(0, w.getFailedBatchCount());
+        assertEquals(Collections.singletonList(2), writes);
+    }
+
+    @Test
+    void failedBatchIsRetriedOneOperationAtATime() throws Exception {
+        GroupCommitWriter w = writer(3);
+        CompletableFuture<Void> first = w.submit(ledgerRow(1001), 1001);
+        CompletableFuture<Void> broken = w.submit(conn -> {
+            throw new SQLException("constraint violated", "23000");
+        }, 1002);
+        CompletableFuture<Void> third = w.submit(ledgerRow(1003), 1003);
+
+        awaitSuccess(first);
+        awaitSuccess(third);
+        assertEquals(DatabaseException.Reason.SQL_ERROR, awaitFailure(broken).getReason());
+        // the batch, then the broken operation on its own
+        assertEquals(2, w.getFailedBatchCount());
+        assertEquals(2, w.getBatchCount());
+        assertEquals(2, writes.size());
+    }
+
+    @Test
+    void everyOperationCompletesWhenCloseRacesSubmit() throws Exception {
+        GroupCommitWriter w = writer(8);
+        List<CompletableFuture<Void>> results = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch started = new CountDownLatch(4);
+        List<Thread> submitters = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                started.countDown();
+                for (int i = 0; i < 2_000; i++) results.add(w.submit(ledgerRow(1001), 1001));
+            });
+            thread.start();
+            submitters.add(thread);
+        }
+        started.await();
+        w.close();
+        for (Thread t : submitters) t.join();
+
+        for (CompletableFuture<Void> f : results) {
+            try {
+                f.get(5, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertInstanceOf(DatabaseException.class, e.getCause());
+            }
+        }
+        assertEquals(8_000, results.size());
+    }
+
+    @Test
+    void writerThreadDeathFailsWaitingOperations() throws Exception {
+        GroupCommitWriter w = writer(2, (conn, rows) -> {
+            throw new Error("simulated writer crash");
+        });
+        CompletableFuture<Void> a = w.submit(ledgerRow(1001), 1001);
+        CompletableFuture<Void> b = w.submit(ledgerRow(1002), 1002);
+
+        assertTrue(awaitFailure(a).getMessage().contains("stopped"));
+        awaitFailure(b);
+        awaitFailure(w.submit(ledgerRow(1003), 1003));
+    }
+}
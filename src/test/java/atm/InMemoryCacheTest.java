@@ -0,0 +1,120 @@
+package atm;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryCacheTest {
+    private static final int ID = 1001;
+
+    private static Account savings(String balance) {
+        return new SavingsAccount(ID, "Test", new BigDecimal(balance));
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        InMemoryCache cache = new InMemoryCache(100, 60_000L);
+        AtomicInteger calls = new AtomicInteger();
+        Account loaded = savings("100.00");
+        InMemoryCache.Loader loader = id -> {
+            calls.incrementAndGet();
+            sleep(50);
+            return loaded;
+        };
+
+        ExecutorService threads = Executors.newFixedThreadPool(64);
+        try {
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<Account>> results = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                results.add(threads.submit(() -> {
+                    go.await();
+                    return cache.getOrLoad(ID, loader);
+                }));
+            }
+            go.countDown();
+            for (Future<Account> f : results) assertSame(loaded, f.get(10, TimeUnit.SECONDS));
+        } finally {
+            threads.shutdown();
+        }
+
+        assertEquals(1, calls.get());
+        assertEquals(1, cache.getLoadCount());
+    }
+
+    @Test
+    void loadRacingAnInvalidationIsNotCached() throws Exception {
+        InMemoryCache cache = new InMemoryCache(100, 60_000L);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        ExecutorService threads = Executors.newSingleThreadExecutor();
+        try {
+            Future<Account> stale = threads.submit(() -> cache.getOrLoad(ID, id -> {
+                calls.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return savings("100.00"); // read before the change below committed
+            }));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+            cache.accountChanged(ID);
+            // a lookup after the change must not join the old load
+            Account fresh = cache.getOrLoad(ID, id -> {
+                calls.incrementAndGet();
+                return savings("150.00");
+            });
+            release.countDown();
+
+            assertEquals(0, new BigDecimal("100.00").compareTo(stale.get(5, TimeUnit.SECONDS).getBalance()));
+            assertEquals(0, new BigDecimal("150.00").compareTo(fresh.getBalance()));
+        } finally {
+            threads.shutdown();
+        }
+
+        assertEquals(2, calls.get());
+        assertEquals(0, new BigDecimal("150.00").compareTo(cache.get(ID).getBalance()));
+    }
+
+    @Test
+    void loadInvalidatedWithNoLaterLoadLeavesTheCacheEmpty() throws Exception {
+        InMemoryCache cache = new InMemoryCache(100, 60_000L);
+
+        cache.getOrLoad(ID, id -> {
+            cache.accountChanged(ID);
+            return savings("100.00");
+        });
+
+        assertNull(cache.get(ID));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package atm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JournalReplayerTest {
+    private static final int ACCOUNT = 900_100;
+
+    @TempDir
+    Path journalDir;
+
+    private String url;
+    private ConnectionPool pool;
+    private AccountDAO dao;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        url = TestDatabase.create("replay" + System.nanoTime());
+        TestDatabase.addAccount(url, ACCOUNT, "SAVINGS", new BigDecimal("1000.00"));
+        pool = TestDatabase.pool(url);
+        dao = new AccountDAO(pool, AccountDAO.ExecutionMode.LOCKING);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void batchIsNotAppliedAgainWhenTheCheckpointWasLost() throws Exception {
+        try (TransactionJournal journal = new TransactionJournal(journalDir.toString())) {
+            journal.append(TransactionJournal.DEPOSIT, ACCOUNT, 2_500, 0);
+            journal.append(TransactionJournal.WITHDRAW, ACCOUNT, 1_000, 0);
+            assertEquals(2, new JournalReplayer(journal, dao).replayPending());
+            // as if the process died after the commit but before the checkpoint reached the file
+            journal.checkpoint(0);
+        }
+        try (TransactionJournal journal = new TransactionJournal(journalDir.toString())) {
+            JournalReplayer replayer = new JournalReplayer(journal, dao);
+            assertEquals(0, replayer.replayPending());
+            assertEquals(0, replayer.getLag());
+            assertEquals(2, journal.getCheckpoint());
+        }
+        assertEquals(0, new BigDecimal("1015.00").compareTo(TestDatabase.balance(url, ACCOUNT)));
+    }
+
+    @Test
+    void resumesAfterTheLastAppliedRecord() throws Exception {
+        try (TransactionJournal journal = new TransactionJournal(journalDir.toString())) {
+            journal.append(TransactionJournal.DEPOSIT, ACCOUNT, 500, 0);
+            new JournalReplayer(journal, dao).replayPending();
+            journal.append(TransactionJournal.DEPOSIT, ACCOUNT, 700, 0);
+            journal.checkpoint(0);
+        }
+        try (TransactionJournal journal = new TransactionJournal(journalDir.toString())) {
+            assertEquals(1, new JournalReplayer(journal, dao).replayPending());
+        }
+        assertEquals(0, new BigDecimal("1012.00").compareTo(TestDatabase.balance(url, ACCOUNT)));
+    }
+
+    @Test
+    void replayedRowsKeepTheJournalTimeAndDay() throws Exception {
+        Timestamp lateEvening = Timestamp.valueOf("2026-01-01 23:59:00");
+        Timestamp nextMorning = Timestamp.valueOf("2026-01-02 00:01:00");
+        dao.applyLedgerEntries(JournalReplayer.toEntries(Arrays.asList(
+                new TransactionJournal.Record(1, TransactionJournal.DEPOSIT, ACCOUNT, 1_000, lateEvening.getTime(), 0),
+                new TransactionJournal.Record(2, TransactionJournal.WITHDRAW, ACCOUNT, 400, nextMorning.getTime(), 0))));
+
+        try (Connection conn = DriverManager.getConnection(url, TestDatabase.USER, TestDatabase.PASS);
+             Statement st = conn.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT timestamp FROM transactions WHERE account_id = " + ACCOUNT + " ORDER BY id")) {
+                rs.next();
+                assertEquals(lateEvening, rs.getTimestamp(1));
+                rs.next();
+                assertEquals(nextMorning, rs.getTimestamp(1));
+            }
+            try (ResultSet rs = st.executeQuery("SELECT summary_date, credit_total, debit_total, closing_balance "
+                    + "FROM account_daily_summary WHERE account_id = " + ACCOUNT + " ORDER BY summary_date")) {
+                rs.next();
+                assertEquals("2026-01-01", rs.getDate(1).toString());
+                assertEquals(0, new BigDecimal("10.00").compareTo(rs.getBigDecimal(2)));
+                assertEquals(0, new BigDecimal("1010.00").compareTo(rs.getBigDecimal(4)));
+                rs.next();
+                assertEquals("2026-01-02", rs.getDate(1).toString());
+                assertEquals(0, new BigDecimal("4.00").compareTo(rs.getBigDecimal(3)));
+                assertEquals(0, new BigDecimal("1006.00").compareTo(rs.getBigDecimal(4)));
+            }
+        }
+    }
+}
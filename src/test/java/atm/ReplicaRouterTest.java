@@ -0,0 +1,98 @@
+package atm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A primary and a replica as two separate embedded databases. The replica is never written by the DAO, so it
+ * plays a replica that lags behind every commit.
+ */
+class ReplicaRouterTest {
+    private static final int ACCOUNT = 900_200;
+    private static final BigDecimal PRIMARY_BALANCE = new BigDecimal("1000.00");
+    private static final BigDecimal REPLICA_BALANCE = new BigDecimal("400.00");
+
+    @TempDir
+    Path journalDir;
+
+    private ConnectionPool primary;
+    private ConnectionPool replica;
+    private ReplicaRouter router;
+    private AccountDAO dao;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        long n = System.nanoTime();
+        String primaryUrl = TestDatabase.create("primary" + n);
+        String replicaUrl = TestDatabase.create("replica" + n);
+        TestDatabase.addAccount(primaryUrl, ACCOUNT, "SAVINGS", PRIMARY_BALANCE);
+        TestDatabase.addAccount(replicaUrl, ACCOUNT, "SAVINGS", REPLICA_BALANCE);
+        primary = TestDatabase.pool(primaryUrl);
+        replica = TestDatabase.pool(replicaUrl);
+        router = new ReplicaRouter(primary, Collections.singletonList(replica), ReplicaRouter.Policy.ROUND_ROBIN,
+                60_000L, 60_000L);
+        dao = new AccountDAO(primary, router, AccountDAO.ExecutionMode.CONDITIONAL_UPDATE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        router.close();
+        replica.close();
+        primary.close();
+    }
+
+    @Test
+    void unpinnedReadsGoToTheReplica() throws Exception {
+        assertEquals(0, REPLICA_BALANCE.compareTo(dao.findById(ACCOUNT).getBalance()));
+        assertEquals(1, router.getReplicaReadCount());
+    }
+
+    @Test
+    void readsAfterACommitSeeIt() throws Exception {
+        dao.deposit(ACCOUNT, new BigDecimal("50.00"));
+
+        assertTrue(router.isPinned(ACCOUNT));
+        assertEquals(0, new BigDecimal("1050.00").compareTo(dao.findById(ACCOUNT).getBalance()));
+        assertEquals(1, router.getPinnedReadCount());
+    }
+
+    @Test
+    void primaryReadsNeverUseTheReplica() throws Exception {
+        assertEquals(0, PRIMARY_BALANCE.compareTo(dao.findByIdOnPrimary(ACCOUNT).getBalance()));
+        assertEquals(0, router.getReplicaReadCount());
+    }
+
+    @Test
+    void ledgerSeedsBalancesFromThePrimary() throws Exception {
+        try (ShardedLedger ledger = new ShardedLedger(dao, journalDir.toString(), 2)) {
+            assertEquals(0, PRIMARY_BALANCE.compareTo(ledger.getBalance(ACCOUNT)));
+        }
+    }
+
+    @Test
+    void failedReplicaIsRoutedAround() throws Exception {
+        ConnectionProvider down = () -> {
+            throw new SQLException("replica down");
+        };
+        try (ReplicaRouter failing = new ReplicaRouter(primary, Arrays.asList(down, replica),
+                ReplicaRouter.Policy.ROUND_ROBIN, 60_000L, 60_000L)) {
+            for (int i = 0; i < 4; i++) failing.getReadConnection().close();
+
+            assertFalse(failing.isHealthy(0));
+            assertEquals(1, failing.getFailoverCount());
+            assertEquals(4, failing.getReplicaReadCount());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package atm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ShardedLedgerTest {
+    private static final int FIRST_ID = 900_000;
+    private static final int ACCOUNTS = 10;
+    private static final BigDecimal OPENING = new BigDecimal("1000.00");
+    private static final int THREADS = 8;
+
+    @TempDir
+    Path journalDir;
+
+    private String url;
+    private ConnectionPool pool;
+    private ShardedLedger ledger;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        url = TestDatabase.create("ledger" + System.nanoTime());
+        for (int i = 0; i < ACCOUNTS; i++) TestDatabase.addAccount(url, FIRST_ID + i, "SAVINGS", OPENING);
+        pool = TestDatabase.pool(url);
+        ledger = new ShardedLedger(new AccountDAO(pool, AccountDAO.ExecutionMode.LOCKING), journalDir.toString(), 4);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (ledger != null) ledger.close();
+        pool.close();
+    }
+
+    @Test
+    void concurrentTransfersConserveTheTotal() throws Exception {
+        runConcurrently(2_000, () -> {
+            ThreadLocalRandom r = ThreadLocalRandom.current();
+            int from = FIRST_ID + r.nextInt(ACCOUNTS);
+            int to = FIRST_ID + r.nextInt(ACCOUNTS);
+            if (from == to) return;
+            try {
+                ledger.transfer(from, to, BigDecimal.valueOf(1 + r.nextInt(5_000), 2));
+            } catch (DatabaseException e) {
+                if (e.getReason() != DatabaseException.Reason.INSUFFICIENT_FUNDS) throw e;
+            }
+        });
+
+        BigDecimal expected = OPENING.multiply(BigDecimal.valueOf(ACCOUNTS));
+        BigDecimal[] inMemory = new BigDecimal[ACCOUNTS];
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            inMemory[i] = ledger.getBalance(FIRST_ID + i);
+            total = total.add(inMemory[i]);
+        }
+        assertEquals(0, expected.compareTo(total), "in-memory total " + total);
+
+        closeLedger();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertEquals(0, inMemory[i].compareTo(TestDatabase.balance(url, FIRST_ID + i)), "account " + (FIRST_ID + i));
+        }
+    }
+
+    @Test
+    void concurrentDepositsToOneAccountAreNotLost() throws Exception {
+        int perThread = 1_000;
+        runConcurrently(perThread, () -> ledger.deposit(FIRST_ID, new BigDecimal("0.01")));
+
+        BigDecimal expected = OPENING.add(new BigDecimal("0.01").multiply(BigDecimal.valueOf((long) THREADS * perThread)));
+        assertEquals(0, expected.compareTo(ledger.getBalance(FIRST_ID)));
+        closeLedger();
+        assertEquals(0, expected.compareTo(TestDatabase.balance(url, FIRST_ID)));
+    }
+
+    @Test
+    void rejectsAmountsThatAreNotPositive() throws Exception {
+        for (BigDecimal amount : new BigDecimal[]{BigDecimal.ZERO, new BigDecimal("-5.00"), null}) {
+            assertEquals(DatabaseException.Reason.INVALID,
+                    assertThrows(DatabaseException.class, () -> ledger.withdraw(FIRST_ID, amount)).getReason());
+            assertEquals(DatabaseException.Reason.INVALID,
+                    assertThrows(DatabaseException.class, () -> ledger.deposit(FIRST_ID, amount)).getReason());
+            assertEquals(DatabaseException.Reason.INVALID,
+                    assertThrows(DatabaseException.class, () -> ledger.transfer(FIRST_ID, FIRST_ID + 1, amount)).getReason());
+        }
+        assertEquals(0, OPENING.compareTo(ledger.getBalance(FIRST_ID)));
+        assertEquals(0, OPENING.compareTo(ledger.getBalance(FIRST_ID + 1)));
+    }
+
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    private void runConcurrently(int perThread, Step step) throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                done.add(threads.submit(() -> {
+                    for (int i = 0; i < perThread; i++) step.run();
+                    return null;
+                }));
+            }
+            for (Future<?> f : done) f.get();
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    // closing drains the journal into the database
+    private void closeLedger() throws DatabaseException {
+        ledger.close();
+        ledger = null;
+    }
+}
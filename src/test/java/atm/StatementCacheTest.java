@@ -0,0 +1,122 @@
+package atm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatementCacheTest {
+    private static final String SQL_A = "SELECT balance FROM accounts WHERE account_id = ?";
+    private static final String SQL_B = "SELECT owner_name FROM accounts WHERE account_id = ?";
+    private static final String SQL_C = "SELECT type FROM accounts WHERE account_id = ?";
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private String url;
+    private Connection raw;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        url = TestDatabase.create("statements" + System.nanoTime());
+        raw = DriverManager.getConnection(url, TestDatabase.USER, TestDatabase.PASS);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        raw.close();
+    }
+
+    private PreparedStatement prepareAndClose(StatementCache cache, String sql) throws SQLException {
+        PreparedStatement ps = cache.prepare(raw, sql);
+        PreparedStatement target = ps.unwrap(PreparedStatement.class);
+        ps.close();
+        return target;
+    }
+
+    @Test
+    void leastRecentlyUsedStatementIsEvictedAndClosed() throws Exception {
+        StatementCache cache = new StatementCache(2, hits, misses, evictions);
+        PreparedStatement a = prepareAndClose(cache, SQL_A);
+        PreparedStatement b = prepareAndClose(cache, SQL_B);
+        prepareAndClose(cache, SQL_A); // A is now the most recently used
+        prepareAndClose(cache, SQL_C);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, evictions.sum());
+        assertTrue(b.isClosed());
+        assertFalse(a.isClosed());
+        assertSame(a, prepareAndClose(cache, SQL_A));
+        assertEquals(2, hits.sum());
+        assertEquals(3, misses.sum());
+    }
+
+    @Test
+    void statementInUseIsNotEvicted() throws Exception {
+        StatementCache cache = new StatementCache(1, hits, misses, evictions);
+        PreparedStatement open = cache.prepare(raw, SQL_A);
+        prepareAndClose(cache, SQL_B);
+
+        assertFalse(open.isClosed());
+        open.close();
+    }
+
+    @Test
+    void reusedStatementStartsFromItsDefaults() throws Exception {
+        StatementCache cache = new StatementCache(4, hits, misses, evictions);
+        PreparedStatement ps = cache.prepare(raw, SQL_A);
+        int fetchSize = ps.getFetchSize();
+        ps.setInt(1, 1001);
+        ps.setFetchSize(fetchSize + 10);
+        ps.setMaxRows(1);
+        ps.addBatch();
+        ps.close();
+
+        PreparedStatement again = cache.prepare(raw, SQL_A);
+        assertEquals(1, hits.sum());
+        assertEquals(0, again.getMaxRows());
+        assertEquals(fetchSize, again.getFetchSize());
+        assertEquals(0, again.executeBatch().length);
+        assertThrows(SQLException.class, again::executeQuery, "parameters are cleared");
+        again.close();
+    }
+
+    @Test
+    void statementWithUncachableSettingsIsClosedOnReturn() throws Exception {
+        StatementCache cache = new StatementCache(4, hits, misses, evictions);
+        PreparedStatement ps = cache.prepare(raw, SQL_A);
+        PreparedStatement target = ps.unwrap(PreparedStatement.class);
+        ps.setFetchDirection(ResultSet.FETCH_FORWARD);
+        ps.close();
+
+        assertTrue(target.isClosed());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void statementsLeftOpenAreGivenBackWithTheConnection() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(url, TestDatabase.USER, TestDatabase.PASS, 1, 0, 60_000L, 1_000L, 0L)) {
+            try (Connection c = pool.getConnection()) {
+                PreparedStatement leftOpen = c.prepareStatement(SQL_A);
+                leftOpen.setInt(1, 1001);
+            }
+            try (Connection c = pool.getConnection();
+                 PreparedStatement ps = c.prepareStatement(SQL_A)) {
+                assertEquals(1, pool.getStatementCacheHits());
+                assertThrows(SQLException.class, ps::executeQuery, "parameters are cleared");
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package atm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StatementServiceTest {
+    private static final int SAVINGS = 900_700;
+    private static final int CURRENT = 900_701;
+    private static final int QUIET = 900_702;
+
+    private String url;
+    private ConnectionPool pool;
+    private AccountDAO dao;
+    private StatementService statements;
+    private LocalDate today;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        url = TestDatabase.create("statements" + System.nanoTime());
+        TestDatabase.addAccount(url, SAVINGS, "SAVINGS", new BigDecimal("1000.00"));
+        TestDatabase.addAccount(url, CURRENT, "CURRENT", new BigDecimal("200.00"));
+        TestDatabase.addAccount(url, QUIET, "SAVINGS", new BigDecimal("300.00"));
+        pool = TestDatabase.pool(url);
+        dao = new AccountDAO(pool, AccountDAO.ExecutionMode.LOCKING);
+        statements = new StatementService(pool, dao);
+        today = databaseDate();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dao.close();
+        pool.close();
+    }
+
+    private LocalDate databaseDate() throws Exception {
+        try (Connection conn = DriverManager.getConnection(url, TestDatabase.USER, TestDatabase.PASS);
+             PreparedStatement ps = conn.prepareStatement("SELECT CURRENT_DATE");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            return rs.getDate(1).toLocalDate();
+        }
+    }
+
+    // a transactions row written before the rollup table existed, so it has no rollup of its own
+    private void insertHistory(int accountId, LocalDate date, String type, String amount) throws Exception {
+        try (Connection conn = DriverManager.getConnection(url, TestDatabase.USER, TestDatabase.PASS);
+             PreparedStatement ps = conn.prepareStatement(
+                     "INSERT INTO transactions(account_id, timestamp, type, amount, remark) VALUES (?, ?, ?, ?, 'old')")) {
+            ps.setInt(1, accountId);
+            ps.setTimestamp(2, Timestamp.valueOf(date.atTime(12, 0)));
+            ps.setString(3, type);
+            ps.setBigDecimal(4, new BigDecimal(amount));
+            ps.executeUpdate();
+        }
+    }
+
+    private int rollupCount(int accountId) throws Exception {
+        try (Connection conn = DriverManager.getConnection(url, TestDatabase.USER, TestDatabase.PASS);
+             PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM account_daily_summary WHERE account_id = ?")) {
+            ps.setInt(1, accountId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private static void assertAmount(String expected, BigDecimal actual) {
+        assertEquals(0, new BigDecimal(expected).compareTo(actual), "expected " + expected + " but was " + actual);
+    }
+
+    @Test
+    void everyCommitUpdatesTodaysRollup() throws Exception {
+        dao.deposit(SAVINGS, new BigDecimal("50.00"));
+        dao.withdraw(SAVINGS, new BigDecimal("20.00"));
+        dao.transfer(SAVINGS, CURRENT, new BigDecimal("30.00"));
+
+        PeriodSummary s = statements.periodSummary(SAVINGS, today, today);
+        assertEquals(1, s.getDays().size());
+        DailySummary day = s.getDays().get(0);
+        assertEquals(today, day.getDate());
+        assertEquals(3, day.getTransactionCount());
+        assertEquals(2, day.getDebitCount());
+        assertEquals(1, day.getCreditCount());
+        assertAmount("50.00", day.getDebitTotal());
+        assertAmount("50.00", day.getCreditTotal());
+        assertAmount("1000.00", s.getOpeningBalance());
+        assertAmount("1000.00", s.getClosingBalance());
+
+        DailySummary credited = statements.periodSummary(CURRENT, today, today).getDays().get(0);
+        assertEquals(1, credited.getCreditCount());
+        assertAmount("230.00", credited.getClosingBalance());
+        assertAmount("200.00", credited.getOpeningBalance());
+    }
+
+    @Test
+    void balanceAtReadsBeforeDuringAndAfterActivity() throws Exception {
+        dao.deposit(CURRENT, new BigDecimal("25.00"));
+
+        assertAmount("200.00", statements.balanceAt(CURRENT, today.minusDays(1)));
+        assertAmount("225.00", statements.balanceAt(CURRENT, today));
+        assertAmount("225.00", statements.balanceAt(CURRENT, today.plusDays(1)));
+        assertAmount("300.00", statements.balanceAt(QUIET, today.minusDays(30)));
+        assertEquals(DatabaseException.Reason.NOT_FOUND,
+                assertThrows(DatabaseException.class, () -> statements.balanceAt(900_799, today)).getReason());
+    }
+
+    @Test
+    void invalidPeriodIsRejected() {
+        assertEquals(DatabaseException.Reason.INVALID, assertThrows(DatabaseException.class,
+                () -> statements.periodSummary(SAVINGS, today, today.minusDays(1))).getReason());
+        assertEquals(DatabaseException.Reason.INVALID, assertThrows(DatabaseException.class,
+                () -> statements.periodSummary(SAVINGS, null, today)).getReason());
+    }
+
+    @Test
+    void initScriptBackfillsHistoryThatHasNoRollups() throws Exception {
+        // balance 300.00 today after +100 five days ago, -40 and +10 three days ago, -70 yesterday
+        LocalDate d5 = today.minusDays(5), d3 = today.minusDays(3), d1 = today.minusDays(1);
+        insertHistory(QUIET, d5, "DEPOSIT", "100.00");
+        insertHistory(QUIET, d3, "WITHDRAW", "40.00");
+        insertHistory(QUIET, d3, "TRANSFER_IN", "10.00");
+        insertHistory(QUIET, d1, "TRANSFER_OUT", "70.00");
+
+        TestDatabase.runInitScript(url);
+        assertEquals(3, rollupCount(QUIET));
+        TestDatabase.runInitScript(url);
+        assertEquals(3, rollupCount(QUIET));
+
+        PeriodSummary s = statements.periodSummary(QUIET, d5, today);
+        assertAmount("300.00", s.getOpeningBalance());
+        assertAmount("300.00", s.getClosingBalance());
+        assertEquals(4, s.getTransactionCount());
+        assertAmount("110.00", s.getDebitTotal());
+        assertAmount("110.00", s.getCreditTotal());
+        DailySummary middle = s.getDays().get(1);
+        assertEquals(d3, middle.getDate());
+        assertEquals(1, middle.getDebitCount());
+        assertEquals(1, middle.getCreditCount());
+        assertAmount("370.00", middle.getClosingBalance());
+
+        assertAmount("300.00", statements.balanceAt(QUIET, d5.minusDays(1)));
+        assertAmount("400.00", statements.balanceAt(QUIET, d5));
+        assertAmount("400.00", statements.balanceAt(QUIET, d5.plusDays(1)));
+        assertAmount("370.00", statements.balanceAt(QUIET, d3));
+        assertAmount("300.00", statements.balanceAt(QUIET, d1));
+    }
+
+    @Test
+    void backfillLeavesDaysThatAlreadyHaveRollups() throws Exception {
+        insertHistory(CURRENT, today.minusDays(2), "DEPOSIT", "40.00");
+        dao.deposit(CURRENT, new BigDecimal("10.00"));
+
+        TestDatabase.runInitScript(url);
+
+        PeriodSummary s = statements.periodSummary(CURRENT, today.minusDays(2), today);
+        assertEquals(2, s.getDays().size());
+        assertEquals(1, s.getDays().get(1).getTransactionCount());
+        assertAmount("200.00", s.getDays().get(0).getClosingBalance());
+        assertAmount("160.00", s.getOpeningBalance());
+        assertAmount("210.00", s.getClosingBalance());
+    }
+
+    @Test
+    void mostActiveAccountsCountBackFromTheDatabaseDate() throws Exception {
+        insertHistory(QUIET, today.minusDays(10), "DEPOSIT", "1.00");
+        insertHistory(QUIET, today.minusDays(10), "DEPOSIT", "1.00");
+        insertHistory(QUIET, today.minusDays(10), "DEPOSIT", "1.00");
+        TestDatabase.runInitScript(url);
+        dao.deposit(SAVINGS, new BigDecimal("1.00"));
+        dao.deposit(CURRENT, new BigDecimal("1.00"));
+        dao.deposit(CURRENT, new BigDecimal("1.00"));
+
+        assertEquals(Arrays.asList(CURRENT, SAVINGS), dao.findMostActiveAccountIds(3, 10));
+        assertEquals(Collections.singletonList(QUIET), dao.findMostActiveAccountIds(30, 1));
+        List<Integer> all = dao.findMostActiveAccountIds(30, 10);
+        assertEquals(3, all.size());
+    }
+}
@@ -0,0 +1,104 @@
+package atm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Named in-memory H2 databases in MySQL mode, created from init.sql, for tests.
+ */
+final class TestDatabase {
+    static final String USER = "sa";
+    static final String PASS = "";
+
+    private TestDatabase() {
+    }
+
+    static String url(String name) {
+        return "jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+    }
+
+    /** Creates the schema and the init.sql sample accounts in a new database called {@code name}. */
+    static String create(String name) throws SQLException, IOException {
+        String url = url(name);
+        runInitScript(url);
+        return url;
+    }
+
+    /** Runs init.sql again against an existing database, as an upgrade would. */
+    static void runInitScript(String url) throws SQLException, IOException {
+        try (Connection conn = DriverManager.getConnection(url, USER, PASS);
+             Statement st = conn.createStatement()) {
+            for (String sql : readInitScript().split(";")) {
+                String stmt = stripComments(sql).trim();
+                // the database already exists, and a fresh schema needs none of the MySQL-only migrations
+                if (stmt.isEmpty() || stmt.startsWith("CREATE DATABASE") || stmt.startsWith("USE ")
+                        || stmt.startsWith("SET @") || stmt.startsWith("PREPARE ") || stmt.startsWith("EXECUTE ")
+                        || stmt.startsWith("DEALLOCATE ")) {
+                    continue;
+                }
+                st.execute(stmt);
+            }
+        }
+    }
+
+    static void addAccount(String url, int accountId, String type, BigDecimal balance) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, USER, PASS);
+             PreparedStatement ps = conn.prepareStatement(
+                     "INSERT INTO accounts(account_id, owner_name, type, balance) VALUES (?, ?, ?, ?)")) {
+            ps.setInt(1, accountId);
+            ps.setString(2, "Test " + accountId);
+            ps.setString(3, type);
+            ps.setBigDecimal(4, balance);
+            ps.executeUpdate();
+        }
+    }
+
+    static BigDecimal balance(String url, int accountId) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, USER, PASS);
+             PreparedStatement ps = conn.prepareStatement("SELECT balance FROM accounts WHERE account_id = ?")) {
+            ps.setInt(1, accountId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getBigDecimal(1) : null;
+            }
+        }
+    }
+
+    static int transactionCount(String url, int accountId) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, USER, PASS);
+             PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM transactions WHERE account_id = ?")) {
+            ps.setInt(1, accountId);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    static ConnectionPool pool(String url) {
+        return new ConnectionPool(url, USER, PASS, 8, 1, 60_000L, 30_000L, 0L);
+    }
+
+    private static String readInitScript() throws IOException {
+        try (InputStream in = TestDatabase.class.getResourceAsStream("/init.sql")) {
+            if (in == null) throw new IOException("init.sql not found on the test classpath");
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String stripComments(String sql) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : sql.split("\n")) {
+            int c = line.indexOf("--");
+            sb.append(c >= 0 ? line.substring(0, c) : line).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,129 @@
+package atm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TransferBatchTest {
+    private static final int PAYER = 900_500;
+    private static final int PAYEE = 900_501;
+    private static final int THIRD = 900_502;
+    private static final int MISSING = 900_599;
+    private static final BigDecimal CENT = new BigDecimal("0.01");
+
+    private String url;
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        url = TestDatabase.create("batch" + System.nanoTime());
+        TestDatabase.addAccount(url, PAYER, "SAVINGS", new BigDecimal("1000.00"));
+        TestDatabase.addAccount(url, PAYEE, "SAVINGS", new BigDecimal("150.00"));
+        TestDatabase.addAccount(url, THIRD, "SAVINGS", new BigDecimal("100.00"));
+        pool = TestDatabase.pool(url);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    private static TransferInstruction move(int from, int to, String amount) {
+        return new TransferInstruction(from, to, amount == null ? null : new BigDecimal(amount));
+    }
+
+    private static List<TransferResult.Status> statuses(List<TransferResult> results) {
+        List<TransferResult.Status> out = new ArrayList<>();
+        for (TransferResult r : results) out.add(r.getStatus());
+        return out;
+    }
+
+    private void assertBalance(int accountId, String expected) throws Exception {
+        assertEquals(0, new BigDecimal(expected).compareTo(TestDatabase.balance(url, accountId)), "balance of " + accountId);
+    }
+
+    @Test
+    void eachInstructionGetsItsOwnStatus() throws Exception {
+        AccountDAO dao = new AccountDAO(pool, AccountDAO.ExecutionMode.LOCKING);
+        List<TransferResult> results = dao.transferBatch(Arrays.asList(
+                move(PAYER, PAYEE, "0"),
+                move(PAYER, PAYEE, "-5.00"),
+                move(PAYER, PAYEE, "1.001"),
+                move(PAYER, PAYEE, null),
+                move(PAYER, PAYER, "1.00"),
+                move(PAYER, MISSING, "1.00"),
+                move(MISSING, PAYEE, "1.00"),
+                move(THIRD, PAYEE, "0.01"),
+                move(PAYER, PAYEE, "10.00")));
+
+        assertEquals(Arrays.asList(
+                TransferResult.Status.INVALID, TransferResult.Status.INVALID, TransferResult.Status.INVALID,
+                TransferResult.Status.INVALID, TransferResult.Status.INVALID,
+                TransferResult.Status.ACCOUNT_NOT_FOUND, TransferResult.Status.ACCOUNT_NOT_FOUND,
+                TransferResult.Status.INSUFFICIENT_FUNDS, TransferResult.Status.APPLIED), statuses(results));
+        assertBalance(PAYER, "990.00");
+        assertBalance(PAYEE, "160.00");
+        assertBalance(THIRD, "100.00");
+        assertEquals(1, TestDatabase.transactionCount(url, PAYER));
+    }
+
+    @Test
+    void laterInstructionsSeeEarlierOnesInTheSameChunk() throws Exception {
+        AccountDAO dao = new AccountDAO(pool, AccountDAO.ExecutionMode.LOCKING);
+        // PAYEE can only pay THIRD once PAYER's transfer has landed, and only once
+        List<TransferResult> results = dao.transferBatch(Arrays.asList(
+                move(PAYEE, THIRD, "100.00"),
+                move(PAYER, PAYEE, "100.00"),
+                move(PAYEE, THIRD, "100.00"),
+                move(PAYEE, THIRD, "100.00"),
+                move(THIRD, PAYER, "50.00")));
+
+        assertEquals(Arrays.asList(
+                TransferResult.Status.INSUFFICIENT_FUNDS, TransferResult.Status.APPLIED, TransferResult.Status.APPLIED,
+                TransferResult.Status.INSUFFICIENT_FUNDS, TransferResult.Status.APPLIED), statuses(results));
+        // balances carry the net of every applied leg, with one ledger row per leg
+        assertBalance(PAYER, "950.00");
+        assertBalance(PAYEE, "150.00");
+        assertBalance(THIRD, "150.00");
+        assertEquals(2, TestDatabase.transactionCount(url, PAYER));
+        assertEquals(2, TestDatabase.transactionCount(url, PAYEE));
+        assertEquals(2, TestDatabase.transactionCount(url, THIRD));
+    }
+
+    @Test
+    void failedChunkMarksOnlyItsOwnInstructions() throws Exception {
+        int chunk = DBConfig.BATCH_CHUNK_SIZE;
+        int total = 2 * chunk + chunk / 2;
+        AtomicInteger borrows = new AtomicInteger();
+        // the second chunk's transaction cannot get a connection
+        ConnectionProvider flaky = () -> {
+            if (borrows.incrementAndGet() == 2) throw new SQLException("Connection refused", "08001");
+            return pool.getConnection();
+        };
+        AccountDAO dao = new AccountDAO(flaky, AccountDAO.ExecutionMode.LOCKING);
+        List<TransferInstruction> payroll = new ArrayList<>();
+        for (int i = 0; i < total; i++) payroll.add(move(PAYER, PAYEE, "0.01"));
+
+        List<TransferResult> results = dao.transferBatch(payroll);
+
+        assertEquals(total, results.size());
+        for (int i = 0; i < total; i++) {
+            TransferResult.Status expected = i >= chunk && i < 2 * chunk
+                    ? TransferResult.Status.FAILED : TransferResult.Status.APPLIED;
+            assertEquals(expected, results.get(i).getStatus(), "instruction " + i);
+        }
+        int applied = total - chunk;
+        assertEquals(3, borrows.get());
+        assertBalance(PAYER, new BigDecimal("1000.00").subtract(CENT.multiply(BigDecimal.valueOf(applied))).toPlainString());
+        assertEquals(applied, TestDatabase.transactionCount(url, PAYER));
+    }
+}
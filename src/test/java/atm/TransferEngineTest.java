@@ -0,0 +1,110 @@
+package atm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TransferEngineTest {
+    private ConnectionPool pool;
+    private TransferEngine engine;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        pool = TestDatabase.pool(TestDatabase.create("engine" + System.nanoTime()));
+        engine = new TransferEngine(pool, 3, 0L, 0L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void classifiesMySqlCodesBeforeSqlState() {
+        assertEquals(TransferEngine.Conflict.DEADLOCK, TransferEngine.classify(new SQLException("deadlock", "40001", 1213)));
+        assertEquals(TransferEngine.Conflict.LOCK_TIMEOUT, TransferEngine.classify(new SQLException("timeout", "HY000", 1205)));
+        // MySQL may report a lock-wait timeout with the serialization-failure state
+        assertEquals(TransferEngine.Conflict.LOCK_TIMEOUT,
+                TransferEngine.classify(new SQLTransactionRollbackException("timeout", "40001", 1205)));
+    }
+
+    @Test
+    void classifiesByStateForOtherDatabases() {
+        assertEquals(TransferEngine.Conflict.DEADLOCK, TransferEngine.classify(new SQLException("serialization", "40001")));
+        assertEquals(TransferEngine.Conflict.DEADLOCK, TransferEngine.classify(new SQLException("deadlock", "40P01")));
+        // H2 reports its lock timeout with its own vendor code
+        assertEquals(TransferEngine.Conflict.LOCK_TIMEOUT, TransferEngine.classify(new SQLException("timeout", "HYT00", 50200)));
+        assertEquals(TransferEngine.Conflict.DEADLOCK, TransferEngine.classify(new SQLTransactionRollbackException("rolled back")));
+    }
+
+    @Test
+    void findsConflictsInCausesAndChainedExceptions() {
+        SQLException wrapped = new SQLException("batch failed", "HY000", 0, new SQLException("deadlock", "40001", 1213));
+        assertEquals(TransferEngine.Conflict.DEADLOCK, TransferEngine.classify(wrapped));
+        SQLException chained = new SQLException("batch failed", "HY000");
+        chained.setNextException(new SQLException("timeout", "HY000", 1205));
+        assertEquals(TransferEngine.Conflict.LOCK_TIMEOUT, TransferEngine.classify(chained));
+    }
+
+    @Test
+    void otherFailuresAreNotRetryable() {
+        assertNull(TransferEngine.classify(new SQLException("duplicate key", "23000", 1062)));
+        assertNull(TransferEngine.classify(new SQLException("no state")));
+    }
+
+    @Test
+    void retriesStopAtMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+        DatabaseException e = assertThrows(DatabaseException.class, () -> engine.execute(conn -> {
+            attempts.incrementAndGet();
+            throw new SQLException("deadlock", "40001", 1213);
+        }));
+
+        assertEquals(DatabaseException.Reason.SQL_ERROR, e.getReason());
+        assertEquals(3, attempts.get());
+        assertEquals(1, engine.getTransactionCount());
+        assertEquals(2, engine.getRetryCount());
+        assertEquals(3, engine.getDeadlockCount());
+        assertEquals(1, engine.getExhaustedCount());
+    }
+
+    @Test
+    void conflictThatClearsIsRetriedUntilItCommits() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        engine.execute(conn -> {
+            if (attempts.incrementAndGet() < 3) throw new SQLException("timeout", "HY000", 1205);
+        });
+
+        assertEquals(3, attempts.get());
+        assertEquals(2, engine.getRetryCount());
+        assertEquals(2, engine.getLockTimeoutCount());
+        assertEquals(0, engine.getDeadlockCount());
+        assertEquals(0, engine.getExhaustedCount());
+    }
+
+    @Test
+    void nonRetryableFailuresAreReportedAtOnce() {
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(DatabaseException.class, () -> engine.execute(conn -> {
+            attempts.incrementAndGet();
+            throw new SQLException("duplicate key", "23000", 1062);
+        }));
+        DatabaseException rejected = new DatabaseException("Insufficient funds", null, DatabaseException.Reason.INSUFFICIENT_FUNDS);
+        assertSame(rejected, assertThrows(DatabaseException.class, () -> engine.execute(conn -> {
+            attempts.incrementAndGet();
+            throw rejected;
+        })));
+
+        assertEquals(2, attempts.get());
+        assertEquals(0, engine.getRetryCount());
+    }
+}